@@ -0,0 +1,103 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.adonax.audiodicer.AudioDicer;
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+import com.adonax.audiodicer.BatchRenderer;
+import com.adonax.audiodicer.Cue;
+
+/*
+ * Batch rendering of one minute of audio as the thread count grows, 
+ * to check how close to linear the chunked render scales.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchBenchmark {
+
+	private static final int FRAMES = 44100 * 60;
+	
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+	
+	private ForkJoinPool pool;
+	private BatchRenderer renderer;
+	private float[] left, right;
+	
+	@Setup
+	public void setup() throws Exception {
+		AudioDicer prototype = new AudioDicer();
+		prototype.setCue(Cue.fromWAV(Assets.get("chordgliss.wav")));
+		prototype.setSliceSize(20000);
+		prototype.setOverlap(3000);
+		prototype.setCrossFadeMode(CrossFadeMode.SINE);
+		prototype.setVolume(0.7);
+		
+		pool = new ForkJoinPool(threads);
+		renderer = new BatchRenderer(prototype, 1234);
+		renderer.setPool(pool);
+		renderer.setChunkFrames(FRAMES / 16);
+		left = new float[FRAMES];
+		right = new float[FRAMES];
+	}
+	
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+	
+	@Benchmark
+	public float[] render(RenderCounters counters) {
+		renderer.render(left, right, 0, FRAMES);
+		counters.add(FRAMES);
+		return left;
+	}
+}
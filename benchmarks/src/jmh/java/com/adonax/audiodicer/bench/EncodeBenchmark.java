@@ -0,0 +1,97 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adonax.audiodicer.StandardEncoder;
+
+/*
+ * Encoder throughput alone, on a fixed block of planar floats, into a 
+ * heap byte[] and a direct ByteBuffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncodeBenchmark {
+
+	private static final int FRAMES = 1024;
+	
+	@Param({"PCM16_LE", "PCM16_BE", "PCM24_LE", "FLOAT32_LE"})
+	public StandardEncoder encoder;
+	
+	private float[] left, right;
+	private byte[] bytes;
+	private ByteBuffer direct;
+	
+	@Setup
+	public void setup() {
+		left = new float[FRAMES];
+		right = new float[FRAMES];
+		for (int i = 0; i < FRAMES; i++) {
+			left[i] = (float)Math.sin(i * 0.05) * 1.2f; // some clipping
+			right[i] = (float)Math.cos(i * 0.05) * 0.8f;
+		}
+		bytes = new byte[FRAMES * encoder.getBytesPerFrame()];
+		direct = ByteBuffer.allocateDirect(bytes.length);
+	}
+	
+	@Benchmark
+	public byte[] heap(RenderCounters counters) {
+		encoder.encode(left, right, 0, FRAMES, bytes, 0);
+		counters.add(FRAMES);
+		return bytes;
+	}
+	
+	@Benchmark
+	public ByteBuffer direct(RenderCounters counters) {
+		direct.clear();
+		encoder.encode(left, right, 0, FRAMES, direct);
+		counters.add(FRAMES);
+		return direct;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adonax.audiodicer.AudioDicer;
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+import com.adonax.audiodicer.Cue;
+import com.adonax.audiodicer.DicerMixer;
+import com.adonax.audiodicer.LayeredDicer;
+import com.adonax.audiodicer.RenderSource;
+
+/*
+ * The four-layer brook torrent, as a LayeredDicer and as four dicers
+ * summed by a DicerMixer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LayeredBenchmark {
+
+	private static final double[] SPEEDS = {0.25, 0.5, 1, 2};
+	private static final double[] GAINS = {0.3, 0.4, 0.6, 0.7};
+	
+	@Param({"layered", "mixer"})
+	public String renderer;
+	
+	@Param({"1024"})
+	public int bufferFrames;
+	
+	private RenderSource source;
+	private float[] left, right;
+	
+	@Setup
+	public void setup() throws Exception {
+		AudioDicer prototype = new AudioDicer();
+		prototype.setCue(Cue.fromWAV(Assets.get("brook.wav")));
+		prototype.setSliceSize(8000);
+		prototype.setOverlap(2000);
+		prototype.setCrossFadeMode(CrossFadeMode.SINE);
+		prototype.setVolume(0.8);
+		
+		if (renderer.equals("layered")) {
+			LayeredDicer layered = new LayeredDicer(prototype, 1234);
+			for (int i = 0; i < SPEEDS.length; i++) {
+				layered.addLayer(SPEEDS[i], GAINS[i], GAINS[i]);
+			}
+			layered.start();
+			source = layered;
+		} else {
+			DicerMixer mixer = new DicerMixer();
+			for (int i = 0; i < SPEEDS.length; i++) {
+				AudioDicer dicer = new AudioDicer(prototype, 1234 + i);
+				dicer.setSpeed(SPEEDS[i]);
+				dicer.start();
+				mixer.addVoice(dicer, GAINS[i]);
+			}
+			source = mixer;
+		}
+		left = new float[bufferFrames];
+		right = new float[bufferFrames];
+	}
+	
+	@Benchmark
+	public float[] render(RenderCounters counters) {
+		source.render(left, right, 0, bufferFrames);
+		counters.add(bufferFrames);
+		return left;
+	}
+}
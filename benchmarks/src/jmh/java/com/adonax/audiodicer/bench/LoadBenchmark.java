@@ -0,0 +1,98 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.adonax.audiodicer.AudioDicer;
+import com.adonax.audiodicer.Cue;
+
+/*
+ * Decoding each bundled asset with loadAudioDataFromWAV. The score is 
+ * loads per second, so its reciprocal is the decode time. The "frames"
+ * counter gives the decode rate in frames per second. For comparison,
+ * mapping the same asset from a pre-decoded cue file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoadBenchmark {
+
+	@Param({"brook.wav", "chordgliss.wav", "Brownian_6_200.wav"})
+	public String asset;
+	
+	private Path cueFile;
+	
+	@Setup
+	public void setup() throws Exception {
+		cueFile = Files.createTempFile("bench", ".cue");
+		Cue.fromWAV(Assets.get(asset)).writeCueFile(cueFile);
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(cueFile);
+	}
+	
+	@Benchmark
+	public AudioDicer loadAudioDataFromWAV(RenderCounters counters) 
+			throws Exception {
+		AudioDicer audioDicer = new AudioDicer();
+		audioDicer.loadAudioDataFromWAV(Assets.get(asset));
+		counters.add(audioDicer.getCue().getFrameCount());
+		return audioDicer;
+	}
+	
+	@Benchmark
+	public Cue fromCueFile(RenderCounters counters) throws Exception {
+		Cue cue = Cue.fromCueFile(cueFile);
+		counters.add(cue.getFrameCount());
+		return cue;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.adonax.audiodicer.AudioDicer;
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+import com.adonax.audiodicer.Cue;
+
+/*
+ * Rendering at speed 1 from the cue, and from a bank of 32 pre-faded
+ * slices, for float and 16-bit storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SliceBankBenchmark {
+
+	@Param({"0", "32"})
+	public int bankSize;
+	
+	@Param({"FLOAT", "SHORT_INTERLEAVED"})
+	public Cue.Storage storage;
+	
+	@Param({"1024"})
+	public int bufferFrames;
+	
+	private AudioDicer dicer;
+	private float[] left, right;
+	
+	@Setup
+	public void setup() throws Exception {
+		dicer = new AudioDicer();
+		dicer.setCue(Cue.fromWAV(Assets.get("brook.wav"), storage));
+		dicer.setSliceSize(20000);
+		dicer.setOverlap(3000);
+		dicer.setCrossFadeMode(CrossFadeMode.SINE);
+		dicer.setVolume(0.8);
+		dicer.setSliceBankSize(bankSize);
+		dicer.start();
+		left = new float[bufferFrames];
+		right = new float[bufferFrames];
+	}
+	
+	@Benchmark
+	public float[] render(RenderCounters counters) {
+		dicer.render(left, right, 0, bufferFrames);
+		counters.add(bufferFrames);
+		return left;
+	}
+}
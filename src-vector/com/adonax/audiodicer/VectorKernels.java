@@ -0,0 +1,130 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Vector API forms of the Kernels, at the platform's preferred width.
+ * Loaded reflectively by Kernels, and compiled separately because the
+ * incubator module needs Java 16 or later and a compiler flag. Each 
+ * loop finishes its tail with the scalar form.
+ */
+final class VectorKernels extends Kernels {
+	
+	private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+	// Half the width, so that a float vector converts lane for lane.
+	private static final VectorSpecies<Short> S = VectorSpecies.of(
+			short.class, VectorShape.forBitSize(F.vectorBitSize() / 2));
+	
+	private final Kernels scalar = new Kernels.Scalar();
+	
+	@Override
+	String getName() { return "vector-" + F.vectorBitSize(); }
+
+	@Override
+	void scale(float[] buffer, int offset, int frames, float gain) {
+		final int bound = F.loopBound(frames);
+		int n = 0;
+		for (; n < bound; n += F.length()) {
+			FloatVector.fromArray(F, buffer, offset + n).mul(gain)
+				.intoArray(buffer, offset + n);
+		}
+		scalar.scale(buffer, offset + n, frames - n, gain);
+	}
+
+	@Override
+	void crossfade(float[] out, int outOffset, float[] in, int inOffset,
+			float[] gainOut, float[] gainIn, int gainOffset, int frames) {
+		final int bound = F.loopBound(frames);
+		int n = 0;
+		for (; n < bound; n += F.length()) {
+			FloatVector a = FloatVector.fromArray(F, out, outOffset + n)
+					.mul(FloatVector.fromArray(F, gainOut, gainOffset + n));
+			FloatVector b = FloatVector.fromArray(F, in, inOffset + n)
+					.mul(FloatVector.fromArray(F, gainIn, gainOffset + n));
+			a.add(b).intoArray(out, outOffset + n);
+		}
+		scalar.crossfade(out, outOffset + n, in, inOffset + n, 
+				gainOut, gainIn, gainOffset + n, frames - n);
+	}
+
+	@Override
+	void mix(float[] dst, int dstOffset, float[] src, int offset, 
+			int frames, float gain) {
+		final int bound = F.loopBound(frames);
+		int n = 0;
+		for (; n < bound; n += F.length()) {
+			FloatVector.fromArray(F, dst, dstOffset + n)
+				.add(FloatVector.fromArray(F, src, offset + n).mul(gain))
+				.intoArray(dst, dstOffset + n);
+		}
+		scalar.mix(dst, dstOffset + n, src, offset + n, frames - n, gain);
+	}
+
+	@Override
+	void clip16(float[] src, int offset, int frames, short[] dst, 
+			int dstOffset) {
+		final int bound = F.loopBound(frames);
+		int n = 0;
+		for (; n < bound; n += F.length()) {
+			((ShortVector)FloatVector.fromArray(F, src, offset + n)
+					.min(1f).max(-1f).mul(32767f)
+					.convertShape(VectorOperators.F2S, S, 0))
+				.intoArray(dst, dstOffset + n);
+		}
+		scalar.clip16(src, offset + n, frames - n, dst, dstOffset + n);
+	}
+
+	@Override
+	void toFloats(short[] src, int offset, int frames, float[] dst,
+			int dstOffset, float scale) {
+		final int bound = F.loopBound(frames);
+		int n = 0;
+		for (; n < bound; n += F.length()) {
+			((FloatVector)ShortVector.fromArray(S, src, offset + n)
+					.convertShape(VectorOperators.S2F, F, 0))
+				.mul(scale)
+				.intoArray(dst, dstOffset + n);
+		}
+		scalar.toFloats(src, offset + n, frames - n, dst, dstOffset + n, scale);
+	}
+}
@@ -38,231 +38,868 @@ package com.adonax.audiodicer;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.DoubleUnaryOperator;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
-public class AudioDicer {
+public class AudioDicer implements RenderSource {
 	
 	public enum Tracks {MONO, STEREO};
 	
+	// Ramp lengths at 44.1kHz, scaled to the output rate.
 	private final int VOLUME_STEPS = 1024;
 	private final int SPEED_STEPS = 1024 * 4;
 	private final int PAN_STEPS = 1024;
+	private int volumeSteps = VOLUME_STEPS;
+	private int speedSteps = SPEED_STEPS;
+	private int panSteps = PAN_STEPS;
 	
-	private boolean running;
+	private volatile boolean running;
 	public boolean getRunning() { return running; }
 	
-	// Internal audio format is normalized signed stereo pcm, [2][frames]
-	// where [0] = left and [1] = right track.
-	private float[][] audioData;
+	// The shared, read-only audio asset. samples and audioFrames are
+	// cached from the cue for the render loops.
+	private Cue cue;
+	private SampleStore samples;
 	private int audioFrames; // count of frames
-	private Cursor cursor; // tool used to iterate through the audioData
+	private Cursor cursor; // tool used to iterate through the samples
+	
+	/*
+	 * Threading: setters are called from a control thread, render() and
+	 * read() from the audio thread. Once running, a setter validates its
+	 * value against the control thread's own record of what has been 
+	 * requested, and posts the change to a lock-free queue. The audio 
+	 * thread drains the queue at the start of each block and applies 
+	 * each change on the frame it is due, so the fields the render loop
+	 * reads are only ever written by the audio thread. Only one control
+	 * thread should call the setters at a time.
+	 * 
+	 * If the queue is full the change is dropped, and the setter returns
+	 * false and leaves the requested settings as they were.
+	 */
+	private final int PARAMETER_QUEUE_SIZE = 256;
+	private final ParameterQueue parameters;
+	private long framesRendered;
+	
+	private final DicerMetrics metrics = new DicerMetrics(this);
+	public DicerMetrics getMetrics() { return metrics; }
+	
+	private static final int SET_SLICE_SIZE = 0;
+	private static final int SET_OVERLAP = 1;
+	private static final int SET_CROSSFADE_MODE = 2;
+	private static final int SET_VOLUME = 3;
+	private static final int SET_SPEED = 4;
+	private static final int SET_PAN = 5;
+	private static final int SET_SLICE_SELECTION = 6;
+	private static final int SET_PAN_MODE = 7;
+	private static final int SET_AUTOMATION = 8;
+	private static final int SET_CONTROL_RATE = 9;
+	private static final int SET_VIRTUAL_THRESHOLD = 10;
+	private static final int SET_INTERPOLATION = 11;
+	private static final int SET_COMB_FILTER_PADDING = 12;
+	
+	// Control thread's view of the requested settings.
+	private int requestedSliceSize, requestedOverlap;
+	private CrossFadeMode requestedCfMode = CrossFadeMode.NONE;
+	private float requestedSpeed = 1;
+	private float requestedVolume, requestedPan;
 	
 	////////// Dicing Parameters \\\\\\\\\\\
 	private int sliceSize, newSliceSize;
-	public void setSliceSize(int sliceSize) throws IllegalArgumentException {
-		if (isProposedSliceSizeOK(sliceSize)) {
-			this.newSliceSize = sliceSize;	
-			if (!running) {
-				this.sliceSize = sliceSize;
-			}
-		} else {
+	public boolean setSliceSize(int sliceSize) throws IllegalArgumentException {
+		checkBankUnchanged();
+		if (!isProposedSliceSizeOK(sliceSize)) {
+			metrics.recordRejectedSliceSize();
 			throw new IllegalArgumentException("New sliceSize rejected: " + sliceSize);
 		}
+		if (!submit(SET_SLICE_SIZE, sliceSize, 0, null)) return false;
+		requestedSliceSize = sliceSize;
+		return true;
 	}
 	public int getSliceSize() {return sliceSize;}
 	
+	/*
+	 * Slice size and overlap in milliseconds, converted at the output 
+	 * sample rate.
+	 */
+	public boolean setSliceSizeMillis(double millis) {
+		return setSliceSize(millisToFrames(millis));
+	}
+	public double getSliceSizeMillis() {
+		return sliceSize * 1000.0 / outputSampleRate;
+	}
+	
 	private int overlap, newOverlap;
-	public void setOverlap(int overlap)	throws IllegalArgumentException {
+	public boolean setOverlap(int overlap) throws IllegalArgumentException {
 		// rule: overlap must be no larger than 50% sliceSize
+		checkBankUnchanged();
 		
-		if (overlap * 2 < sliceSize)
-		{
-			this.newOverlap = overlap;
-			if (!running) {
-				this.newOverlap = overlap;
-			}
-		} else {
+		if (overlap < 0 || overlap * 2 >= requestedSliceSize) {
 			throw new IllegalArgumentException("New overlap rejected:" + overlap);
 		}
+		if (!submit(SET_OVERLAP, overlap, 0, 
+				buildFadeTable(requestedCfMode, overlap))) return false;
+		requestedOverlap = overlap;
+		return true;
 	}
 	public int getOverlap() {return overlap;}
+	
+	public boolean setOverlapMillis(double millis) {
+		return setOverlap(millisToFrames(millis));
+	}
+	public double getOverlapMillis() {
+		return overlap * 1000.0 / outputSampleRate;
+	}
 
-	public enum CrossFadeMode { NONE, LINEAR, SINE}
-	private CrossFadeMode crossfadeMode, newCfMode;
-	public void setCrossFadeMode(CrossFadeMode cfMode) {
-		newCfMode = cfMode;
-		if (! running) {
-			this.crossfadeMode = cfMode;
+	/*
+	 * SINE and EQUAL_POWER both hold the summed power steady, SINE with
+	 * sine/cosine gains and EQUAL_POWER with square-root gains. 
+	 * RAISED_COSINE is an S-shaped curve whose gains sum to one. CUSTOM
+	 * uses the curve given to setCustomCrossFadeCurve().
+	 */
+	public enum CrossFadeMode { NONE, LINEAR, SINE, EQUAL_POWER, 
+		RAISED_COSINE, CUSTOM }
+	private CrossFadeMode crossfadeMode = CrossFadeMode.NONE;
+	private CrossFadeMode newCfMode = CrossFadeMode.NONE;
+	public boolean setCrossFadeMode(CrossFadeMode cfMode) {
+		checkBankUnchanged();
+		if (cfMode == CrossFadeMode.CUSTOM && customCurve == null) {
+			throw new IllegalArgumentException(
+					"Set a custom curve before selecting CUSTOM.");
 		}
+		if (!submit(SET_CROSSFADE_MODE, cfMode.ordinal(), 0, 
+				buildFadeTable(cfMode, requestedOverlap))) return false;
+		requestedCfMode = cfMode;
+		return true;
+	}
+	public CrossFadeMode getCrossFadeMode() { return crossfadeMode; }
+	
+	/*
+	 * The curve maps the fade position [0..1] to the fade-in gain. The 
+	 * fade-out gain is its mirror image. Takes effect with CUSTOM mode.
+	 */
+	private DoubleUnaryOperator customCurve;
+	public void setCustomCrossFadeCurve(DoubleUnaryOperator curve) {
+		customCurve = curve;
+		if (requestedCfMode == CrossFadeMode.CUSTOM) {
+			setCrossFadeMode(CrossFadeMode.CUSTOM);
+		}
+	}
+	
+	// Gain tables are swapped in at the same safe point as the overlap.
+	private FadeTable fadeTable, newFadeTable;
+	private int fadeIdx;
+	
+	private FadeTable buildFadeTable(CrossFadeMode mode, int overlap) {
+		if (mode == CrossFadeMode.CUSTOM) {
+			return FadeTable.build(customCurve, overlap);
+		}
+		return FadeTable.get(mode, overlap);
+	}
+	
+	/*
+	 * Quality of the resampling done when reading the cue, cheapest 
+	 * first: NONE (drop-sample), LINEAR, CUBIC (Hermite), and SINC 
+	 * (band-limited, with a cutoff that follows the speed). Chosen per
+	 * voice, so that quiet or distant voices can use a cheap mode and 
+	 * foreground voices a high quality one.
+	 */
+	public enum Interpolation { NONE, LINEAR, CUBIC, SINC }
+	private Interpolation interpolation = Interpolation.LINEAR;
+	private Interpolation requestedInterpolation = Interpolation.LINEAR;
+	public boolean setInterpolation(Interpolation interpolation) {
+		if (!submit(SET_INTERPOLATION, interpolation.ordinal(), 0, null)) {
+			return false;
+		}
+		requestedInterpolation = interpolation;
+		return true;
+	}
+	public Interpolation getInterpolation() { return interpolation; }
+	
+	/*
+	 * How slice starts are chosen. RANDOM draws uniformly from the 
+	 * permitted range. SPLICE_INDEX draws from the cue's splice index:
+	 * zero crossings in steady, moderately quiet passages. Those join
+	 * cleanly enough to allow shorter overlaps, or even no fade at all.
+	 * The index is built on the calling thread when it is first needed.
+	 */
+	public enum SliceSelection { RANDOM, SPLICE_INDEX }
+	private SliceSelection requestedSelection = SliceSelection.RANDOM;
+	private SliceSelection sliceSelection = SliceSelection.RANDOM;
+	private SpliceIndex spliceIndex; // null unless SPLICE_INDEX
+	public boolean setSliceSelection(SliceSelection selection) {
+		checkBankUnchanged();
+		if (!submit(SET_SLICE_SELECTION, selection.ordinal(), 0, 
+				spliceIndexFor(cue, selection))) return false;
+		requestedSelection = selection;
+		return true;
+	}
+	public SliceSelection getSliceSelection() { return sliceSelection; }
+	
+	private static SpliceIndex spliceIndexFor(Cue cue, 
+			SliceSelection selection) {
+		return selection == SliceSelection.SPLICE_INDEX && cue != null 
+				? cue.getSpliceIndex() : null;
 	}
-
-	private float crossfadeRatio, cfRatioDelta;
 	
 	/////////  read management  \\\\\\\\\
 	private int countdownIdx;
 	private int stateswitch; // 0=cursorA, 1=AtoB transition
 							//  2=cursorB, 3=BtoA transition
-	private float[] pcmA, pcmB, pcmOut;
 	
-	private Random random;
+	/*
+	 * Slice starts are drawn from a SplittableRandom. Give it a seed to
+	 * make the output reproducible: two dicers with the same cue, 
+	 * settings and seed render identical audio.
+	 */
+	private SplittableRandom random;
+	public void setSeed(long seed) {
+		if (running) {
+			throw new IllegalStateException("Cannot reseed while running.");
+		}
+		random = new SplittableRandom(seed);
+		planner.clear();
+	}
+	
+	/*
+	 * The next few slice starts are planned a block ahead. The preview
+	 * is a snapshot of that plan, soonest first, for prefetching or a 
+	 * display. It can be read from any thread. The padding is checked
+	 * again when a slice is taken, so a start can still move by the 
+	 * comb filter padding if the speed changes in the meantime.
+	 */
+	private final int PLAN_LENGTH = 8;
+	private final SlicePlanner planner = new SlicePlanner(PLAN_LENGTH);
+	public int[] getPlannedStarts() { return planner.getPreview(); }
 	
 	/*
 	 *  Default comb filter padding = sample rate * 30 millis
 	 *  or about 1/33 of a second, to be on the safe side.
 	 *  Comb filtering is usually considered to end with delays 
-	 *  of around 25 millis.  
+	 *  of around 25 millis. The default follows the output rate
+	 *  until a padding is set.
 	 */
-	private int combFilterPadding = (int)(44100 * 0.03);
-	public void setCombFilterPadding(int combFilterPadding) {
-		this.combFilterPadding = combFilterPadding;
+	private final double DEFAULT_PADDING_SECONDS = 0.03;
+	private int combFilterPadding = 
+			(int)(Cue.DEFAULT_SAMPLE_RATE * DEFAULT_PADDING_SECONDS);
+	private int requestedCombFilterPadding = combFilterPadding;
+	private boolean paddingSet;
+	public boolean setCombFilterPadding(int combFilterPadding) {
+		if (!submit(SET_COMB_FILTER_PADDING, combFilterPadding, 0, null)) {
+			return false;
+		}
+		requestedCombFilterPadding = combFilterPadding;
+		paddingSet = true;
+		return true;
+	}
+	public boolean setCombFilterPaddingMillis(double millis) {
+		return setCombFilterPadding(millisToFrames(millis));
 	}
 	public int getCombFilterPadding() {
 		return combFilterPadding;
 	}
 	
+	/*
+	 * The block loops for gain, cross-fades and bulk reads. Vector API 
+	 * forms are used when available; see Kernels. 
+	 */
+	private static final Kernels KERNELS = Kernels.INSTANCE;
+	private static final float EXACT_FLOAT_LIMIT = 1 << 24;
+	public static String getRenderBackend() { return KERNELS.getName(); }
+	
 	//////////////////// Constructor ///////////////////
 	public AudioDicer() {
 		cursor = new Cursor();
 		cursor.reset();
-		pcmA = new float[2];
-		pcmB = new float[2];
-		pcmOut = new float[2];
-		random = new Random();
+		random = new SplittableRandom();
+		fadeTable = newFadeTable = buildFadeTable(crossfadeMode, overlap);
+		parameters = new ParameterQueue(PARAMETER_QUEUE_SIZE);
+	}
+	
+	/*
+	 * A stopped copy of the prototype's requested settings, sharing its
+	 * cue, with its own seeded random stream. Volume, pan and speed 
+	 * start at their targets rather than ramping up from the defaults.
+	 * A slice bank setting is copied too, and the copy cuts its own 
+	 * bank, from its own random stream, when it is started. Call from 
+	 * the prototype's control thread.
+	 */
+	public AudioDicer(AudioDicer prototype, long seed) {
+		this();
+		setOutputSampleRate(prototype.outputSampleRate);
+		if (prototype.sourceCue != null) {
+			setCue(prototype.sourceCue);
+		}
+		paddingSet = prototype.paddingSet;
+		customCurve = prototype.customCurve;
+		requestedInterpolation = interpolation = prototype.requestedInterpolation;
+		requestedCombFilterPadding = combFilterPadding = 
+				prototype.requestedCombFilterPadding;
+		requestedSelection = sliceSelection = prototype.requestedSelection;
+		spliceIndex = spliceIndexFor(cue, sliceSelection);
+		
+		requestedSliceSize = sliceSize = newSliceSize = 
+				prototype.requestedSliceSize;
+		requestedOverlap = overlap = newOverlap = prototype.requestedOverlap;
+		requestedCfMode = crossfadeMode = newCfMode = prototype.requestedCfMode;
+		fadeTable = newFadeTable = buildFadeTable(crossfadeMode, overlap);
+		
+		requestedSpeed = cursor.speed = cursor.targetSpeed = 
+				prototype.requestedSpeed;
+		requestedVolume = cursor.volume = cursor.targetVolume = 
+				prototype.requestedVolume;
+		requestedPan = cursor.pan = cursor.targetPan = prototype.requestedPan;
+		requestedPanMode = panMode = prototype.requestedPanMode;
+		requestedControlRate = controlRate = prototype.requestedControlRate;
+		requestedVirtualThreshold = virtualThreshold = 
+				prototype.requestedVirtualThreshold;
+		sliceBankSize = prototype.sliceBankSize;
+		sliceBankBudget = prototype.sliceBankBudget;
+		
+		random = new SplittableRandom(seed);
 	}
 	
 	///////////////////// LOAD Data /////////////////////
-	// allow option of loading PCM data directly
+	// Each load decodes a new Cue for this instance only. To share one
+	// decoded buffer among several dicers, load the Cue once and hand
+	// it to each of them with setCue().
 	/////////////////////////////////////////////////////
 	public void loadAudioDataWithPCM(float[] audioData, Tracks tracks) {
-		
-		int n = audioData.length;
-		switch (tracks) {
-			case MONO:
-				// Convert to a stereo file to conform with
-				// the internal format.
-				this.audioData = new float[2][n];
-				for (int i = 0; i < n; i++) {
-					this.audioData[0][i] = audioData[i];
-					this.audioData[1][i] = audioData[i];
-				}
-				break;
-			case STEREO:
-				this.audioData = new float[2][n/2];
-				for (int i = 0; i < n; i += 2) {
-					this.audioData[0][i/2] = audioData[i];
-					this.audioData[1][i/2] = audioData[i + 1];
-				}
-		}
+		setCue(Cue.fromPCM(audioData, tracks));
 	}
 	
 	// load from URL
 	public void loadAudioDataFromWAV(URL url) 
 			throws UnsupportedAudioFileException, IOException {
-		
-		AudioInputStream ais = AudioSystem.getAudioInputStream(url);
-		AudioFormat format = ais.getFormat();
-		
-		// Is it Mono or Stereo?
-		int numberOfTracks = format.getChannels();
-		Tracks tracks;
-		switch (numberOfTracks) {
-			case 1: 
-				tracks = Tracks.MONO;
-				break;
-			case 2: 
-				tracks = Tracks.STEREO;
-				break;
-			default:
-				System.out.println("Error: audio file has an unsupported "
-						+ "number of channels:" + numberOfTracks);
-				return;
+		setCue(Cue.fromWAV(url));
+	}
+	
+	/*
+	 * A cue at another sample rate is converted to the output rate 
+	 * here, once, rather than corrected by the speed on every frame. 
+	 * The conversion is kept with the cue for other dicers to share.
+	 */
+	public void setCue(Cue cue) {
+		if (running) {
+			throw new IllegalStateException("Cannot change cue while running.");
 		}
+		this.sourceCue = cue;
+		this.cue = cue.atSampleRate(outputSampleRate);
+		this.samples = this.cue.samples;
+		this.audioFrames = this.cue.getFrameCount();
+		this.spliceIndex = spliceIndexFor(this.cue, requestedSelection);
+	}
 	
-		audioFrames = (int)ais.getFrameLength();
-		audioData = new float[2][audioFrames];
-		
-		int READ_BUFFER_SIZE = 1024 * 8;
-		byte[] readBuffer = new byte[READ_BUFFER_SIZE];
-		int bytesRead = 0;
-		int pcmIdx = 0;
-		
-		while((bytesRead = ais.read(readBuffer, 0, READ_BUFFER_SIZE)) != -1) {
-			
-			int ii = 0;
-			while (ii < bytesRead) {
-				audioData[0][pcmIdx] = 
-							( readBuffer[ii++] & 0xff )
-							| ( readBuffer[ii++] << 8 ) ;
-				
-				if (tracks == Tracks.MONO) {
-					audioData[1][pcmIdx] = audioData[0][pcmIdx];
-				} else { // STEREO
-					audioData[1][pcmIdx] = 
-							( readBuffer[ii++] & 0xff )
-							| ( readBuffer[ii++] << 8 ) ;
-				}
-				
-				pcmIdx++;
-			}
+	/*
+	 * The cue as played, at the output sample rate.
+	 */
+	public Cue getCue() { return cue; }
+	private Cue sourceCue;
+	
+	/*
+	 * The rate the dicer renders at, 44100 by default. Cues are 
+	 * converted to it, and ramp lengths, the default comb filter 
+	 * padding and the millisecond setters are scaled to it. Set it 
+	 * before configuring slice sizes in frames.
+	 */
+	private float outputSampleRate = Cue.DEFAULT_SAMPLE_RATE;
+	public void setOutputSampleRate(float sampleRate) {
+		if (running) {
+			throw new IllegalStateException(
+					"Cannot change the output rate while running.");
 		}
-
-		// normalize
-		for (int i = 0; i < audioFrames; i++)
-		{
-			audioData[0][i] /= 32767f;
-			audioData[1][i] /= 32767f;
+		if (!(sampleRate >= 1000)) {
+			throw new IllegalArgumentException(
+					"Output sample rate rejected: " + sampleRate);
+		}
+		outputSampleRate = sampleRate;
+		final double scale = sampleRate / Cue.DEFAULT_SAMPLE_RATE;
+		volumeSteps = Math.max(1, (int)Math.round(VOLUME_STEPS * scale));
+		speedSteps = Math.max(1, (int)Math.round(SPEED_STEPS * scale));
+		panSteps = Math.max(1, (int)Math.round(PAN_STEPS * scale));
+		if (!paddingSet) {
+			requestedCombFilterPadding = combFilterPadding = 
+					(int)(sampleRate * DEFAULT_PADDING_SECONDS);
+		}
+		panner.setSampleRate(sampleRate);
+		if (sourceCue != null) {
+			setCue(sourceCue);
 		}
 	}
+	public float getOutputSampleRate() { return outputSampleRate; }
+	
+	private int millisToFrames(double millis) {
+		return (int)Math.round(millis * outputSampleRate / 1000);
+	}
 	
 	public void start() {
 		countdownIdx = sliceSize - (2 * overlap);
 		// Q: should we start from 0, or from a random spot?
-		cursor.idxA = getNextStart(audioData[0].length - 1);
+		planner.clear();
+		planSpeed = 0;
+		panner.reset();
+		if (sliceBankSize > 0) {
+			startSliceBank();
+		} else {
+			bank = null;
+			cursor.idxA = nextStart(audioFrames - 1);
+		}
 		running = true;
 	}
 	
+	/////////////////// Slice bank ////////////////////
+	/*
+	 * For voices that stay at speed 1, such as static ambience beds, 
+	 * the slices can be cut from the cue once, at start(), with their 
+	 * fades already applied (see SliceBank). Playing is then a copy per
+	 * run, and a cross-fade one add, for a fraction of the cost of 
+	 * reading and fading the cue. The voice cycles through a bank of 
+	 * slices rather than drawing fresh starts, so a bank should be big
+	 * enough that the repetition is not heard.
+	 * 
+	 * The bank is fixed once built: while it is in use, the speed, 
+	 * slice size, overlap, cross-fade mode and slice selection cannot 
+	 * be changed. It holds as many slices as asked for, up to the 
+	 * memory budget. Slices are cut unfiltered, so the interpolation 
+	 * mode does not apply: a SINC voice with a bank loses the slight 
+	 * filtering SINC does at speed 1.
+	 */
+	private int sliceBankSize;
+	private long sliceBankBudget = 64L << 20;
+	private SliceBank bank;
+	private int bankA, bankB; // slices played by streams A and B
+	
+	/*
+	 * The number of slices to cut at start(), at least 2, or 0 (the 
+	 * default) to play from the cue.
+	 */
+	public void setSliceBankSize(int slices) {
+		if (running) {
+			throw new IllegalStateException(
+					"Cannot change the slice bank while running.");
+		}
+		if (slices != 0 && (slices < 2 || requestedSpeed != 1)) {
+			throw new IllegalArgumentException(
+					"Slice bank needs speed 1 and at least 2 slices: " + slices);
+		}
+		sliceBankSize = slices;
+	}
+	
+	/*
+	 * The most memory, in bytes, the bank may take; 64MB by default.
+	 */
+	public void setSliceBankBudget(long bytes) {
+		if (running) {
+			throw new IllegalStateException(
+					"Cannot change the slice bank while running.");
+		}
+		if (bytes <= 0) {
+			throw new IllegalArgumentException(
+					"Slice bank budget rejected: " + bytes);
+		}
+		sliceBankBudget = bytes;
+	}
+	public long getSliceBankBudget() { return sliceBankBudget; }
+	
+	/*
+	 * The slices in the bank in use, or 0 if none.
+	 */
+	public int getSliceBankCount() { 
+		return bank == null ? 0 : bank.count; 
+	}
+	
+	private void startSliceBank() {
+		final long perSlice = SliceBank.bytesPerSlice(sliceSize, 
+				samples.channels);
+		if (sliceSize <= 2 * overlap || perSlice <= 0) {
+			throw new IllegalStateException("Slice bank needs a slice size "
+					+ "over twice the overlap, has " + sliceSize 
+					+ " with overlap " + overlap + ".");
+		}
+		final int count = (int)Math.min(sliceBankSize, 
+				sliceBankBudget / perSlice);
+		if (count < 2) {
+			throw new IllegalStateException("Slice bank budget of " 
+					+ sliceBankBudget + " bytes is too small for 2 slices.");
+		}
+		bank = SliceBank.build(samples, count, sliceSize, overlap, fadeTable, 
+				combFilterPadding, spliceIndex, random);
+		// Start clear of the fade-in, as playing from the cue does.
+		stateswitch = 0;
+		bankA = random.nextInt(bank.count);
+		cursor.idxA = overlap;
+	}
+	
+	/*
+	 * Rejects, while a bank is playing, the changes it cannot follow.
+	 */
+	private void checkBankUnchanged() {
+		if (running && bank != null) {
+			throw new IllegalStateException(
+					"Cannot change slices while playing from a slice bank.");
+		}
+	}
+	
 	////////////////// Cursor Management ///////////////////	
-	public void setVolume(double volume) {	
-		cursor.targetVolume = (float)Math.min(1, Math.max(0, volume));
-		cursor.targetVolumeIncr = 
-				(cursor.targetVolume - cursor.volume) / VOLUME_STEPS;
-		cursor.targetVolumeSteps = VOLUME_STEPS;
-	};	
+	public void setVolume(double volume) {
+		setVolume(volume, 0);
+	}
+	
+	/*
+	 * The timestamped setters start their change the given number of 
+	 * frames into the next block rendered. Returns false if the change
+	 * was dropped because the parameter queue was full.
+	 */
+	public boolean setVolume(double volume, int frameOffset) {	
+		final float clamped = (float)Math.min(1, Math.max(0, volume));
+		if (!submit(SET_VOLUME, clamped, frameOffset, null)) return false;
+		requestedVolume = clamped;
+		return true;
+	}
 	public double getVolume() {
 		return cursor.volume;
 	}
 
-	public void setPan(double pan) {		
-		cursor.targetPan = (float)Math.min(1, Math.max(-1, pan));
-		cursor.targetPanIncr = (cursor.targetPan - cursor.pan) / PAN_STEPS;
-		cursor.targetPanSteps = PAN_STEPS;
-	};
+	public void setPan(double pan) {
+		setPan(pan, 0);
+	}
+	
+	public boolean setPan(double pan, int frameOffset) {		
+		final float clamped = (float)Math.min(1, Math.max(-1, pan));
+		if (!submit(SET_PAN, clamped, frameOffset, null)) return false;
+		requestedPan = clamped;
+		return true;
+	}
 
 	public double getPan() { return cursor.pan; }
+	
+	/*
+	 * CONSTANT_POWER (the default) pans by level, with unity gain at the
+	 * centre. DELAY pans by delaying the far channel up to 0.7 millis,
+	 * leaving the levels alone. See Panner.
+	 */
+	public enum PanMode { CONSTANT_POWER, DELAY }
+	private PanMode requestedPanMode = PanMode.CONSTANT_POWER;
+	private PanMode panMode = PanMode.CONSTANT_POWER;
+	private final Panner panner = new Panner(Cue.DEFAULT_SAMPLE_RATE);
+	public boolean setPanMode(PanMode panMode) {
+		if (!submit(SET_PAN_MODE, panMode.ordinal(), 0, null)) return false;
+		requestedPanMode = panMode;
+		return true;
+	}
+	public PanMode getPanMode() { return panMode; }
+	
+	/////////////////// Virtual voice ////////////////////
+	/*
+	 * While the volume, and any volume it is ramping toward, is at or
+	 * below the threshold, the voice goes virtual: render() writes 
+	 * silence and only steps the slice state machine, the cursors and 
+	 * the random draws forward, with no sample work. When it becomes 
+	 * audible again it picks up where playing would have reached, 
+	 * fading in over RESUME_FADE_FRAMES. The default threshold of 0
+	 * virtualizes only silent voices, so costs nothing in output.
+	 */
+	private final int RESUME_FADE_FRAMES = 256;
+	private float virtualThreshold, requestedVirtualThreshold;
+	private boolean virtual;
+	private boolean blockVirtual; // the whole of the last block
+	private int resumeFadeIdx = RESUME_FADE_FRAMES;
+	
+	public boolean setVirtualThreshold(double volume) {
+		if (!(volume >= 0 && volume < 1)) {
+			throw new IllegalArgumentException(
+					"Virtual threshold rejected: " + volume);
+		}
+		if (!submit(SET_VIRTUAL_THRESHOLD, volume, 0, null)) return false;
+		requestedVirtualThreshold = (float)volume;
+		return true;
+	}
+	public double getVirtualThreshold() { return virtualThreshold; }
+	
+	/*
+	 * Whether the last segment rendered was virtual. 
+	 */
+	public boolean isVirtual() { return virtual; }
+	
+	/*
+	 * Whether the whole of the last block rendered was silent, for 
+	 * mixers to skip summing it.
+	 */
+	boolean wasBlockVirtual() { return blockVirtual; }
+	
+	private boolean isInaudible() {
+		return Math.max(cursor.volume, cursor.targetVolume) <= virtualThreshold;
+	}
+	
+	/////////////////// Automation ////////////////////
+	/*
+	 * Ramps, envelopes and LFOs (see Automation) on speed, volume and 
+	 * pan. Every controlRate frames the render thread evaluates each 
+	 * running automation at the end of the coming period and sets up a 
+	 * linear ramp to that value, as the setters do over their fixed 
+	 * lengths. A plain setter call cancels the automation of its 
+	 * parameter, and a new automation replaces the old one, starting 
+	 * from wherever the parameter stands.
+	 */
+	public enum Parameter { SPEED, VOLUME, PAN }
+	private final Automation[] automations = new Automation[3];
+	private final long[] automationStarts = new long[3];
+	private final double[] automationFrom = new double[3];
+	private float speedCeiling; // highest speed of a speed automation, or 0
+	private int controlRate = 32;
+	private int controlCountdown;
+	
+	public boolean automate(Parameter parameter, Automation automation) {
+		return automate(parameter, automation, 0);
+	}
+	
+	/*
+	 * Starts the automation the given number of frames into the next
+	 * block. A speed automation whose highest speed would leave too 
+	 * little of the cue to choose slices from is rejected with an
+	 * IllegalArgumentException. Returns false if the queue was full.
+	 * 
+	 * The requested volume or pan, as copied by the copy constructor,
+	 * becomes the value the automation settles at: its final value, or
+	 * an LFO's centre.
+	 */
+	public boolean automate(Parameter parameter, Automation automation, 
+			int frameOffset) {
+		switch (parameter) {
+		case SPEED:
+			if (sliceBankSize > 0) {
+				throw new IllegalStateException("A slice bank plays at speed 1.");
+			}
+			final double max = automation.getMaxValue(requestedSpeed);
+			if (!isProposedSpeedOK(max)) {
+				metrics.recordRejectedSpeed();
+				throw new IllegalArgumentException(
+						"Speed automation rejected, reaches: " + max);
+			}
+			if (!submit(SET_AUTOMATION, parameter.ordinal(), frameOffset, 
+					automation)) return false;
+			requestedSpeed = (float)Math.min(4, max);
+			return true;
+		case VOLUME:
+			if (!submit(SET_AUTOMATION, parameter.ordinal(), frameOffset, 
+					automation)) return false;
+			requestedVolume = (float)Math.min(1, Math.max(0, 
+					settlingValue(automation, requestedVolume)));
+			return true;
+		default:
+			if (!submit(SET_AUTOMATION, parameter.ordinal(), frameOffset, 
+					automation)) return false;
+			requestedPan = (float)Math.min(1, Math.max(-1, 
+					settlingValue(automation, requestedPan)));
+			return true;
+		}
+	}
+	
+	private static double settlingValue(Automation automation, double from) {
+		final double duration = automation.getDuration();
+		return automation.valueAt(Double.isInfinite(duration) ? 0 : duration, 
+				from);
+	}
+	
+	/*
+	 * Stops the parameter's automation, holding it where it stands.
+	 */
+	public boolean cancelAutomation(Parameter parameter) {
+		return submit(SET_AUTOMATION, parameter.ordinal(), 0, null);
+	}
+	
+	/*
+	 * Frames between automation control points, from 1 to 4096. Smaller
+	 * values track fast LFOs more closely, at more cost per block.
+	 */
+	public boolean setControlRate(int frames) {
+		if (frames < 1 || frames > 4096) {
+			throw new IllegalArgumentException("Control rate rejected: " + frames);
+		}
+		if (!submit(SET_CONTROL_RATE, frames, 0, null)) return false;
+		requestedControlRate = frames;
+		return true;
+	}
+	public int getControlRate() { return controlRate; }
+	private int requestedControlRate = 32;
+	
+	private boolean isAutomating() {
+		return automations[0] != null || automations[1] != null 
+				|| automations[2] != null;
+	}
+	
+	/*
+	 * Sets up the ramps for the control period starting at the given 
+	 * frame. An automation that reaches its end within the period is
+	 * retired once its final ramp is set.
+	 */
+	private void runAutomation(long frame) {
+		final double sampleRate = cue.getSampleRate();
+		for (int p = 0; p < automations.length; p++) {
+			final Automation automation = automations[p];
+			if (automation == null) continue;
+			
+			if (automationStarts[p] < 0) {
+				automationStarts[p] = frame;
+				automationFrom[p] = p == 0 ? cursor.speed 
+						: p == 1 ? cursor.volume : cursor.pan;
+				if (p == 0) {
+					speedCeiling = (float)Math.min(4, 
+							automation.getMaxValue(automationFrom[p]));
+				}
+			}
+			final double t = (frame + controlRate - automationStarts[p]) 
+					/ sampleRate;
+			final float value = (float)automation.valueAt(t, automationFrom[p]);
+			switch (p) {
+			case 0: rampSpeed(value, controlRate); break;
+			case 1: rampVolume(value, controlRate); break;
+			default: rampPan(value, controlRate);
+			}
+			if (t >= automation.getDuration()) {
+				automations[p] = null;
+				if (p == 0) speedCeiling = 0;
+			}
+		}
+	}
 
-	public void setSpeed(double speed)
+	/*
+	 * A speed the cue is too short for at the current slice size is 
+	 * rejected with an IllegalArgumentException, as a speed automation
+	 * reaching it is. Returns false only if the change queue was full.
+	 */
+	public void setSpeed(double speed) {
+		setSpeed(speed, 0);
+	}
+	
+	public boolean setSpeed(double speed, int frameOffset)
 	{
+		if (sliceBankSize > 0 && speed != 1) {
+			throw new IllegalStateException("A slice bank plays at speed 1.");
+		}
 		if (!isProposedSpeedOK(speed)) {
-			System.out.println("speed clamped at: " + cursor.speed);
-			return;
+			metrics.recordRejectedSpeed();
+			throw new IllegalArgumentException("Speed rejected: " + speed);
 		}
 		
+		if (!submit(SET_SPEED, speed, frameOffset, null)) return false;
+		requestedSpeed = (float)speed;
+		return true;
+	}
+		
+	public double getSpeed() { return cursor.speed;	}
+	
+	/*
+	 * While running, changes go through the queue to the audio thread.
+	 * Before start(), they are applied at once. Returns false if the 
+	 * queue was full and the change was dropped, which is counted in 
+	 * the metrics.
+	 */
+	private boolean submit(int command, double value, int frameOffset, 
+			Object payload) {
 		if (running) {
-			cursor.targetSpeed = (float)Math.min(4, Math.max(0.25, speed));
-			cursor.targetSpeedIncr = 
-					(cursor.targetSpeed - cursor.speed) / SPEED_STEPS;
-			cursor.targetSpeedSteps = SPEED_STEPS;
+			if (!parameters.offer(command, value, frameOffset, payload)) {
+				metrics.recordDroppedChange();
+				return false;
+			}
 		} else {
-			cursor.speed = (float)speed;
+			applyCommand(command, value, payload);
 		}
-	};
-		
-	public double getSpeed() { return cursor.speed;	}
+		return true;
+	}
+	
+	private void applyCommand(int command, double value, Object payload) {
+		switch (command) {
+		case SET_SLICE_SIZE:
+			newSliceSize = (int)value;
+			if (!running) {
+				sliceSize = newSliceSize;
+			}
+			break;
+		case SET_OVERLAP:
+			newOverlap = (int)value;
+			newFadeTable = (FadeTable)payload;
+			if (!running) {
+				overlap = newOverlap;
+				fadeTable = newFadeTable;
+			}
+			break;
+		case SET_CROSSFADE_MODE:
+			newCfMode = CrossFadeMode.values()[(int)value];
+			newFadeTable = (FadeTable)payload;
+			if (!running) {
+				crossfadeMode = newCfMode;
+				fadeTable = newFadeTable;
+			}
+			break;
+		case SET_VOLUME:
+			automations[Parameter.VOLUME.ordinal()] = null;
+			rampVolume((float)value, volumeSteps);
+			break;
+		case SET_PAN:
+			automations[Parameter.PAN.ordinal()] = null;
+			rampPan((float)value, panSteps);
+			break;
+		case SET_AUTOMATION:
+			automations[(int)value] = (Automation)payload;
+			automationStarts[(int)value] = -1;
+			if ((int)value == Parameter.SPEED.ordinal()) {
+				speedCeiling = 0;
+			}
+			controlCountdown = 0;
+			break;
+		case SET_CONTROL_RATE:
+			controlRate = (int)value;
+			break;
+		case SET_VIRTUAL_THRESHOLD:
+			virtualThreshold = (float)value;
+			break;
+		case SET_INTERPOLATION:
+			interpolation = Interpolation.values()[(int)value];
+			break;
+		case SET_COMB_FILTER_PADDING:
+			combFilterPadding = (int)value;
+			break;
+		case SET_PAN_MODE:
+			panMode = PanMode.values()[(int)value];
+			panner.reset();
+			break;
+		case SET_SLICE_SELECTION:
+			sliceSelection = SliceSelection.values()[(int)value];
+			spliceIndex = (SpliceIndex)payload;
+			break;
+		case SET_SPEED:
+			automations[Parameter.SPEED.ordinal()] = null;
+			speedCeiling = 0;
+			if (running) {
+				rampSpeed((float)value, speedSteps);
+			} else {
+				cursor.speed = (float)value;
+			}
+			break;
+		}
+	}
+	
+	private void rampVolume(float target, int steps) {
+		cursor.targetVolume = Math.min(1, Math.max(0, target));
+		cursor.targetVolumeIncr = (cursor.targetVolume - cursor.volume) / steps;
+		cursor.targetVolumeSteps = steps;
+	}
+	
+	private void rampPan(float target, int steps) {
+		cursor.targetPan = Math.min(1, Math.max(-1, target));
+		cursor.targetPanIncr = (cursor.targetPan - cursor.pan) / steps;
+		cursor.targetPanSteps = steps;
+	}
+	
+	private void rampSpeed(float target, int steps) {
+		cursor.targetSpeed = Math.min(4, Math.max(0.25f, target));
+		cursor.targetSpeedIncr = (cursor.targetSpeed - cursor.speed) / steps;
+		cursor.targetSpeedSteps = steps;
+	}
 
 	// Intention: keep all mutable values for the read cursor together.
 	// TODO QUESTION: should countdown vars also be here? Maybe so!
@@ -302,7 +939,24 @@ public class AudioDicer {
 	
 	///////////// READING DATA /////////////
 	
+	private float[] renderL, renderR; // scratch for the read() methods
+	private float[] fadeL, fadeR; // scratch for the incoming stream of a fade
+	
+	/*
+	 * Fills the buffer with 16-bit little-endian stereo PCM, clipped at 
+	 * full scale. Only whole frames are written. Returns the number of
+	 * bytes written, or -1 if not running.
+	 */
 	public int read(byte[] buffer) {
+		return read(buffer, 0, buffer.length, StandardEncoder.PCM16_LE);
+	}
+	
+	/*
+	 * Renders as many whole frames as fit in length bytes and encodes 
+	 * them into the buffer. Returns the number of bytes written, or -1 
+	 * if not running.
+	 */
+	public int read(byte[] buffer, int offset, int length, AudioEncoder encoder) {
 		
 		if (!running) {
 			// TODO : throw illegal state?
@@ -310,192 +964,579 @@ public class AudioDicer {
 			return -1;
 		}
 
-		int bufferIdx = 0;
+		int frames = length / encoder.getBytesPerFrame();
+		ensureRenderScratch(frames);
+		render(renderL, renderR, 0, frames);
+		
+		return encoder.encode(renderL, renderR, 0, frames, buffer, offset);
+	}
+	
+	/*
+	 * As above, filling the buffer's remaining space with whole frames
+	 * and advancing its position. A direct buffer can be handed straight
+	 * to a native sink without a further copy.
+	 */
+	public int read(ByteBuffer buffer, AudioEncoder encoder) {
 		
-		// Loop to load the data buffer, a one-dimensional array, 4 bytes per frame
-		for (int i = 0, n = buffer.length / 4; i < n; i++) {
+		if (!running) {
+			System.out.println("Cannot read. Call start() method to run.");
+			return -1;
+		}
+
+		int frames = buffer.remaining() / encoder.getBytesPerFrame();
+		ensureRenderScratch(frames);
+		render(renderL, renderR, 0, frames);
+		
+		return encoder.encode(renderL, renderR, 0, frames, buffer);
+	}
+	
+	private void ensureRenderScratch(int frames) {
+		if (renderL == null || renderL.length < frames) {
+			renderL = new float[frames];
+			renderR = new float[frames];
+		}
+	}
+	
+	/*
+	 * Block-based rendering into planar float buffers. Rather than 
+	 * dispatching on the state once per frame, we work out how many 
+	 * frames remain in the current state (play A, A to B fade, play B, 
+	 * B to A fade) and run a tight loop over that whole run. Returns 
+	 * the number of frames rendered, or -1 if the dicer is not running.
+	 */
+	@Override
+	public int render(float[] left, float[] right, int offset, int frames) {
+		
+		if (!running) {
+			System.out.println("Cannot render. Call start() method to run.");
+			return -1;
+		}
+		
+		final long startNanos = System.nanoTime();
+		
+		// Mono cues are rendered into the left channel only, then copied.
+		final float[] r = samples.channels == 1 ? null : right;
+		
+		// The block is split into segments at the frames where queued
+		// parameter changes fall due.
+		parameters.drain(framesRendered);
+		if (bank == null) {
+			planSlices();
+		}
+		final int end = offset + frames;
+		int idx = offset;
+		int virtualFrames = 0;
+		while (idx < end) {
+			int segmentEnd = end;
+			while (parameters.hasDue()) {
+				final long due = offset + (parameters.nextFrame() - framesRendered);
+				if (due > idx) {
+					segmentEnd = (int)Math.min(end, due);
+					break;
+				}
+				applyCommand(parameters.nextCommand(), parameters.nextValue(), 
+						parameters.nextPayload());
+				parameters.removeNext();
+			}
+			// Segments are also split at automation control points.
+			final boolean automating = isAutomating();
+			if (automating) {
+				if (controlCountdown <= 0) {
+					runAutomation(framesRendered + (idx - offset));
+					controlCountdown = controlRate;
+				}
+				segmentEnd = Math.min(segmentEnd, idx + controlCountdown);
+			}
+			final int len = segmentEnd - idx;
+			if (isInaudible()) {
+				virtual = true;
+				virtualFrames += len;
+				renderSegment(null, null, idx, len);
+				skipGain(len);
+				Arrays.fill(left, idx, segmentEnd, 0);
+				Arrays.fill(right, idx, segmentEnd, 0);
+			} else {
+				if (virtual) {
+					virtual = false;
+					resumeFadeIdx = 0;
+					panner.reset();
+				}
+				renderSegment(left, r, idx, len);
+				applyGain(left, right, r == null, idx, len);
+				if (resumeFadeIdx < RESUME_FADE_FRAMES) {
+					fadeIn(left, right, idx, len);
+				}
+			}
+			if (automating) {
+				controlCountdown -= segmentEnd - idx;
+			}
+			idx = segmentEnd;
+		}
+		framesRendered += frames;
+		blockVirtual = virtualFrames == frames;
+		metrics.recordRender(frames, System.nanoTime() - startNanos, 
+				cue.getSampleRate(), virtualFrames);
+		
+		return frames;
+	}
+	
+	/*
+	 * A null left buffer means the voice is virtual: the runs are only
+	 * stepped over, advancing the cursors as interpolation would.
+	 */
+	private void renderSegment(float[] left, float[] r, int offset, 
+			int frames) {
+		if (bank != null) {
+			renderBankSegment(left, r, offset, frames);
+			return;
+		}
+		final int end = offset + frames;
+		int idx = offset;
+		while (idx < end) {
+			if (countdownIdx < 1) {
+				switchState();
+			}
 			
-			if (cursor.targetSpeedSteps-- > 0)
-			{
-				cursor.speed += cursor.targetSpeedIncr;
+			int run = Math.min(countdownIdx, end - idx);
+			// Runs are also split where a speed ramp ends, so that the
+			// inner loops can add the increment unconditionally.
+			float speedIncr = 0;
+			if (cursor.targetSpeedSteps > 0) {
+				run = Math.min(run, cursor.targetSpeedSteps);
+				speedIncr = cursor.targetSpeedIncr;
 			}
 			
-			if (cursor.targetVolumeSteps-- > 0)
+			if (left == null) {
+				skip(run, speedIncr);
+			} else switch (stateswitch)
 			{
-				cursor.volume += cursor.targetVolumeIncr;
+				case 0: 
+					cursor.idxA = play(left, r, idx, run, cursor.idxA, 
+							speedIncr);
+					break;
+				case 1: // stream A fades, B grows
+					fade(left, r, idx, run, speedIncr, false);
+					break;
+				case 2: 
+					cursor.idxB = play(left, r, idx, run, cursor.idxB, 
+							speedIncr);
+					break;
+				case 3: // stream B fades, A grows
+					fade(left, r, idx, run, speedIncr, true);
+					break;
 			}
 			
-			pcmOut = getNextAudio();
-			pcmOut[0] *= cursor.volume;
-			pcmOut[1] *= cursor.volume;
-				
-			// Section for converting to bytes
-			bufferIdx = i * 4;
-			
-			float pcmVal = pcmOut[0] * 32767;
-			buffer[bufferIdx] = (byte)pcmVal;
-			buffer[bufferIdx + 1] = (byte)((int)pcmVal >> 8 );
-			pcmVal = pcmOut[1] * 32767;
-			buffer[bufferIdx + 2] = (byte)pcmVal;
-			buffer[bufferIdx + 3] = (byte)((int)pcmVal >> 8 );
+			if (cursor.targetSpeedSteps > 0) {
+				cursor.speed += speedIncr * run;
+				cursor.targetSpeedSteps -= run;
+			}
+			countdownIdx -= run;
+			idx += run;
 		}
-		
-		return bufferIdx + 4;
 	}
 	
-	private float[] getNextAudio() {	
-		countdownIdx--;
-		if (countdownIdx < 1)
-		{
-			// time to switch to next state
-			stateswitch++;
-			stateswitch &= 3; // this "wraps" 4 back to 0 
+	/*
+	 * As renderSegment, playing from the slice bank. The cursors hold 
+	 * positions within bankA and bankB. Fades are already applied, so 
+	 * a run copies the outgoing slice and adds in the incoming one.
+	 */
+	private void renderBankSegment(float[] left, float[] r, int offset, 
+			int frames) {
+		final SliceBank bank = this.bank;
+		final int end = offset + frames;
+		int idx = offset;
+		while (idx < end) {
+			if (countdownIdx < 1) {
+				switchBankState();
+			}
+			final int run = Math.min(countdownIdx, end - idx);
 			
-			if ((stateswitch % 2) == 1) // we've entered into CROSS-FADING	
-			{
-				// This is a safe place to update new (loosely coupled)
-				// values for the slicing operation.
-				if (overlap != newOverlap) {
-					overlap = newOverlap;
-//					System.out.println("new overlap: " + overlap);
-				}
-				if (sliceSize != newSliceSize) {
-					sliceSize = newSliceSize;
-//					System.out.println("new slicesize: " + sliceSize);
-				}
-				if (crossfadeMode != newCfMode) {
-					crossfadeMode = newCfMode;
-//					System.out.println("new crossfade: " + crossfadeMode.name());
+			final boolean fading = (stateswitch & 1) == 1;
+			final boolean bOut = stateswitch >= 2;
+			final int posA = bankA * bank.sliceSize + (int)cursor.idxA;
+			final int posB = bankB * bank.sliceSize + (int)cursor.idxB;
+			if (left != null) {
+				final int from = bOut ? posB : posA;
+				System.arraycopy(bank.data[0], from, left, idx, run);
+				if (r != null) {
+					System.arraycopy(bank.data[1], from, r, idx, run);
 				}
-				
-				countdownIdx = overlap;
-				crossfadeRatio = 0;
-				cfRatioDelta = 1f / overlap;
-				if (stateswitch == 1) // stream A fades, B grows
-				{
-					cursor.idxB = getNextStart((int)cursor.idxA);
-				}		
-				else // stateswitch == 3, stream B fades, A grows
-				{
-					cursor.idxA = getNextStart((int)cursor.idxB);
+				if (fading) {
+					final int in = bOut ? posA : posB;
+					KERNELS.mix(left, idx, bank.data[0], in, run, 1);
+					if (r != null) {
+						KERNELS.mix(r, idx, bank.data[1], in, run, 1);
+					}
 				}
 			}
-			else { // CROSS-FADE just ended, set up to play slice
-				countdownIdx = sliceSize - (2 * overlap);
+			if (fading || !bOut) cursor.idxA += run;
+			if (fading || bOut) cursor.idxB += run;
+			
+			countdownIdx -= run;
+			idx += run;
+		}
+	}
+	
+	/*
+	 * As switchState, choosing the incoming slice from the bank. It is
+	 * never the outgoing one.
+	 */
+	private void switchBankState() {
+		stateswitch = (stateswitch + 1) & 3;
+		if ((stateswitch & 1) == 1) {
+			countdownIdx = bank.overlap;
+			final int out = stateswitch == 1 ? bankA : bankB;
+			int next = random.nextInt(bank.count - 1);
+			if (next >= out) next++;
+			if (stateswitch == 1) {
+				bankB = next;
+				cursor.idxB = 0;
+			} else {
+				bankA = next;
+				cursor.idxA = 0;
 			}
+			metrics.recordSliceSwitch(bank.starts[out], bank.starts[next], 
+					bank.sliceSize, bank.overlap, 1);
+		} else {
+			countdownIdx = Math.max(1, bank.sliceSize - 2 * bank.overlap);
+		}
+	}
+	
+	/*
+	 * Steps the cursors over a run without reading the cue. With a speed
+	 * ramp, interpolation adds speed + k * speedIncr on the kth frame.
+	 */
+	private void skip(int frames, float speedIncr) {
+		final float advance = frames * cursor.speed 
+				+ speedIncr * frames * (frames + 1) * 0.5f;
+		switch (stateswitch) {
+		case 0:
+			cursor.idxA += advance;
+			break;
+		case 2:
+			cursor.idxB += advance;
+			break;
+		default:
+			cursor.idxA += advance;
+			cursor.idxB += advance;
+			fadeIdx += frames;
 		}
+	}
+	
+	/*
+	 * For monitoring: which stream is playing, or which way the 
+	 * cross-fade runs. Read without synchronization, so may be a block
+	 * out of date.
+	 */
+	String getSliceState() {
+		if (!running) return "STOPPED";
+		switch (stateswitch) {
+		case 0: return "PLAYING_A";
+		case 1: return "FADING_A_TO_B";
+		case 2: return "PLAYING_B";
+		default: return "FADING_B_TO_A";
+		}
+	}
+	
+	private void switchState() {
+		// time to switch to next state
+		stateswitch++;
+		stateswitch &= 3; // this "wraps" 4 back to 0 
 		
-		// get next PCM
-		switch (stateswitch)
+		if ((stateswitch % 2) == 1) // we've entered into CROSS-FADING	
 		{
-			case 0: 
-			{
-				cursor.idxA += cursor.speed;
-				pcmOut = getPCMVal(pcmOut, cursor.idxA);
-				break;
+			// This is a safe place to update new (loosely coupled)
+			// values for the slicing operation.
+			if (overlap != newOverlap) {
+				overlap = newOverlap;
 			}
-			case 1: 
-			{
-				cursor.idxA += cursor.speed;
-				cursor.idxB += cursor.speed;
-				pcmA = getPCMVal(pcmA, cursor.idxA);
-				pcmB = getPCMVal(pcmB, cursor.idxB);
-				crossfadeRatio += cfRatioDelta;
-				pcmOut = crossfade(pcmOut, pcmA, pcmB, crossfadeRatio,
-						crossfadeMode);
-				break;
+			if (sliceSize != newSliceSize) {
+				sliceSize = newSliceSize;
 			}
-			case 2: 
-			{
-				cursor.idxB += cursor.speed;
-				pcmOut = getPCMVal(pcmOut, cursor.idxB);
-				break;
+			if (crossfadeMode != newCfMode) {
+				crossfadeMode = newCfMode;
 			}
-			case 3: 
+			fadeTable = newFadeTable;
+			
+			countdownIdx = overlap;
+			fadeIdx = 0;
+			if (stateswitch == 1) // stream A fades, B grows
+			{
+				cursor.idxB = nextStart((int)cursor.idxA);
+				metrics.recordSliceSwitch((long)cursor.idxA, (long)cursor.idxB, 
+						sliceSize, overlap, cursor.speed);
+			}		
+			else // stateswitch == 3, stream B fades, A grows
 			{
-				cursor.idxA += cursor.speed;
-				cursor.idxB += cursor.speed;
-				pcmA = getPCMVal(pcmA, cursor.idxA);
-				pcmB = getPCMVal(pcmB, cursor.idxB);
-				crossfadeRatio += cfRatioDelta;
-				pcmOut = crossfade(pcmOut, pcmB, pcmA, crossfadeRatio,
-						crossfadeMode);
-				break;
+				cursor.idxA = nextStart((int)cursor.idxB);
+				metrics.recordSliceSwitch((long)cursor.idxB, (long)cursor.idxA, 
+						sliceSize, overlap, cursor.speed);
 			}
 		}
-
-		return pcmOut;
+		else { // CROSS-FADE just ended, set up to play slice
+			// At least one frame, so a zero overlap with a slice of
+			// twice that cannot spin without making progress.
+			countdownIdx = Math.max(1, sliceSize - (2 * overlap));
+		}
 	}
-
-	//////// UTILITIES ////////
-	private float[] getPCMVal(float[] pcmFrame, float idx) {
-		// linear interpolation algo is used here
-		final int intIdx = (int)idx;
-		pcmFrame[0] = audioData[0][intIdx + 1] * (idx - intIdx) 
-				+ audioData[0][intIdx] * ((intIdx + 1) - idx);
+	
+	/*
+	 * Plays a single stream. The speed used while interpolating is a 
+	 * local copy; render() commits the ramp afterwards. Returns the 
+	 * updated cursor position. Here and below, a null right channel 
+	 * means the cue is mono and only the left is rendered.
+	 */
+	private float play(float[] left, float[] right, int offset, int frames,
+			float idx, float speedIncr) {
+		return interpolate(left, right, offset, frames, idx, speedIncr);
+	}
+	
+	/*
+	 * Plays both streams over a run of the cross-fade, with gains taken
+	 * from the fade table. The outgoing stream is read straight into the
+	 * output and the incoming one into scratch, then the two are mixed.
+	 * When bToA is true, stream B is the one fading out.
+	 */
+	private void fade(float[] left, float[] right, int offset, int frames,
+			float speedIncr, boolean bToA) {
+		if (fadeL == null || fadeL.length < frames) {
+			fadeL = new float[frames];
+			fadeR = new float[frames];
+		}
+		final float[] inL = fadeL;
+		final float[] inR = fadeR;
+		final float[] gainIn = fadeTable.in;
+		final float[] gainOut = fadeTable.out;
 		
-		pcmFrame[1] = audioData[1][intIdx + 1] * (idx - intIdx) 
-				+ audioData[1][intIdx] * ((intIdx + 1) - idx);
-
-		return pcmFrame;
+		float idxOut = bToA ? cursor.idxB : cursor.idxA;
+		float idxIn = bToA ? cursor.idxA : cursor.idxB;
+		idxOut = interpolate(left, right, offset, frames, idxOut, speedIncr);
+		idxIn = interpolate(inL, right == null ? null : inR, 0, frames, 
+				idxIn, speedIncr);
+		
+		KERNELS.crossfade(left, offset, inL, 0, gainOut, gainIn, fadeIdx, 
+				frames);
+		if (right != null) {
+			KERNELS.crossfade(right, offset, inR, 0, gainOut, gainIn, fadeIdx, 
+					frames);
+		}
+		
+		fadeIdx += frames;
+		if (bToA) {
+			cursor.idxB = idxOut;
+			cursor.idxA = idxIn;
+		} else {
+			cursor.idxA = idxOut;
+			cursor.idxB = idxIn;
+		}
 	}
+	
+	private float interpolate(float[] left, float[] right, int offset, 
+			int frames, float idx, float speedIncr) {
+		final SampleStore src = samples;
+		final float speed = cursor.speed;
 		
-	private final double PI_DIV_2 = Math.PI / 2;
-	private float[] crossfade(float[] ab, float[] a, float[] b, float normal, 
-			CrossFadeMode mode)
-	{
-		switch(mode) {
-		case NONE:
-			if (normal <= 0.5) {
-				ab[0] = a[0];
-				ab[1] = a[1];
-			} else {
-				ab[0] = b[0];
-				ab[1] = b[1];
+		// At speed 1 from a whole-frame position, every mode but SINC
+		// reads the source frames unchanged, so copy them in bulk. The 
+		// position must stay exact in a float, and clear of the clamp.
+		if (speed == 1 && speedIncr == 0 && interpolation != Interpolation.SINC
+				&& idx == (int)idx && idx + frames <= src.frames - 2 
+				&& idx + frames < EXACT_FLOAT_LIMIT) {
+			src.read(0, (int)idx + 1, left, offset, frames);
+			if (right != null) {
+				src.read(1, (int)idx + 1, right, offset, frames);
 			}
-			break;
-		case LINEAR:
-			ab[0] = a[0] * (1 - normal) + b[0] * normal;
-			ab[1] = a[1] * (1 - normal) + b[1] * normal;
-			break;
-		case SINE:
-			ab[0] = (float)(b[0] * (Math.sin(PI_DIV_2 * normal)) 
-					+ a[0] * (Math.sin(PI_DIV_2 * (1 - normal))));
-			ab[1] = (float)(b[1] * (Math.sin(PI_DIV_2 * normal)) 
-					+ a[1] * (Math.sin(PI_DIV_2 * (1 - normal))));
-			break;
-		default: 
-		}	
+			return idx + frames;
+		}
 		
-		return ab;
+		if (right == null) {
+			switch (interpolation) {
+			case NONE:
+				return Interpolator.dropSample(src, left, 
+						offset, frames, idx, speed, speedIncr);
+			case CUBIC:
+				return Interpolator.cubic(src, left, 
+						offset, frames, idx, speed, speedIncr);
+			case SINC:
+				return Interpolator.sinc(src, left, 
+						offset, frames, idx, speed, speedIncr);
+			case LINEAR:
+			default:
+				return Interpolator.linear(src, left, 
+						offset, frames, idx, speed, speedIncr);
+			}
+		}
+		
+		switch (interpolation) {
+		case NONE:
+			return Interpolator.dropSample(src, left, right, 
+					offset, frames, idx, speed, speedIncr);
+		case CUBIC:
+			return Interpolator.cubic(src, left, right, 
+					offset, frames, idx, speed, speedIncr);
+		case SINC:
+			return Interpolator.sinc(src, left, right, 
+					offset, frames, idx, speed, speedIncr);
+		case LINEAR:
+		default:
+			return Interpolator.linear(src, left, right, 
+					offset, frames, idx, speed, speedIncr);
+		}
 	}
 	
-	private int getNextStart(int currentIdx) {
-		int nextStartRange;
-		int pcmMidpoint;
-		int adjCombFilterPad = combFilterPadding;
-		
-		nextStartRange = audioFrames - sliceSize;
+	/*
+	 * Volume and pan for one segment. A steady constant power pan is 
+	 * folded into the volume pass, so it costs nothing extra. Ramps of 
+	 * the pan are applied per segment, interpolating between the gains 
+	 * at its start and end, in a second pass. A mono cue is copied to 
+	 * the right channel here, after the volume if the pan is centred 
+	 * and before it otherwise.
+	 */
+	private void applyGain(float[] left, float[] right, boolean mono, 
+			int offset, int frames) {
+		final float volume = cursor.volume;
+		int ramp = 0;
+		float incr = 0;
+		if (cursor.targetVolumeSteps > 0) {
+			ramp = Math.min(frames, cursor.targetVolumeSteps);
+			incr = cursor.targetVolumeIncr;
+		}
 		
-		// Need to narrow the range when using faster speed.
-		double maxSpeed = Math.max(cursor.speed, cursor.targetSpeed);
-		if (maxSpeed > 1) {
-			nextStartRange = (int)(nextStartRange / maxSpeed);
-			adjCombFilterPad = (int)(combFilterPadding / maxSpeed);
+		final float pan0 = cursor.pan;
+		int panRamp = 0;
+		float pan1 = pan0;
+		if (cursor.targetPanSteps > 0) {
+			panRamp = Math.min(frames, cursor.targetPanSteps);
+			pan1 = cursor.targetPanSteps == panRamp ? cursor.targetPan 
+					: pan0 + cursor.targetPanIncr * panRamp;
 		}
-
-		int nextStart = random.nextInt(nextStartRange);
-		pcmMidpoint = nextStartRange / 2;				
-
-		if (Math.abs(currentIdx - nextStart) < adjCombFilterPad) {
-			if (nextStart < pcmMidpoint) {
-				nextStart -= adjCombFilterPad;
-			} else {
-				nextStart += adjCombFilterPad;
+		final boolean centred = panRamp == 0 && pan0 == 0;
+		final boolean steadyPower = panMode == PanMode.CONSTANT_POWER 
+				&& panRamp == 0;
+		
+		float endVolume;
+		if (mono && centred) {
+			endVolume = scale(left, offset, frames, volume, incr, ramp, 1);
+			System.arraycopy(left, offset, right, offset, frames);
+			if (panMode == PanMode.DELAY) {
+				// No delay at the centre, but the next pan reads the past.
+				panner.feed(left, right, offset, frames);
+			}
+		} else {
+			if (mono) {
+				System.arraycopy(left, offset, right, offset, frames);
+			}
+			endVolume = scale(left, offset, frames, volume, incr, ramp, 
+					steadyPower ? Panner.leftGain(pan0) : 1);
+			scale(right, offset, frames, volume, incr, ramp, 
+					steadyPower ? Panner.rightGain(pan0) : 1);
+			
+			if (panMode == PanMode.DELAY) {
+				panner.delay(left, right, offset, frames, pan0, pan1, panRamp);
+			} else if (!steadyPower) {
+				Panner.rampGains(left, right, offset, frames, pan0, pan1, 
+						panRamp);
 			}
 		}
-
-		return nextStart;
+		
+		if (ramp > 0) {
+			cursor.targetVolumeSteps -= ramp;
+			// Land on the target exactly, as skipGain() does, so that a 
+			// fade to silence can go virtual.
+			cursor.volume = cursor.targetVolumeSteps == 0 ? cursor.targetVolume 
+					: endVolume;
+		}
+		if (panRamp > 0) {
+			cursor.targetPanSteps -= panRamp;
+			cursor.pan = pan1;
+		}
+	}
+	
+	/*
+	 * Steps the volume and pan ramps over a virtual segment.
+	 */
+	private void skipGain(int frames) {
+		if (cursor.targetVolumeSteps > 0) {
+			final int ramp = Math.min(frames, cursor.targetVolumeSteps);
+			cursor.targetVolumeSteps -= ramp;
+			cursor.volume = cursor.targetVolumeSteps == 0 ? cursor.targetVolume
+					: cursor.volume + cursor.targetVolumeIncr * ramp;
+		}
+		if (cursor.targetPanSteps > 0) {
+			final int ramp = Math.min(frames, cursor.targetPanSteps);
+			cursor.targetPanSteps -= ramp;
+			cursor.pan = cursor.targetPanSteps == 0 ? cursor.targetPan 
+					: cursor.pan + cursor.targetPanIncr * ramp;
+		}
+	}
+	
+	/*
+	 * The linear fade-in after a voice comes back from virtual.
+	 */
+	private void fadeIn(float[] left, float[] right, int offset, int frames) {
+		final int n = Math.min(frames, RESUME_FADE_FRAMES - resumeFadeIdx);
+		final float step = 1f / RESUME_FADE_FRAMES;
+		for (int i = 0; i < n; i++) {
+			final float gain = (resumeFadeIdx + i) * step;
+			left[offset + i] *= gain;
+			right[offset + i] *= gain;
+		}
+		resumeFadeIdx += n;
+	}
+	
+	/*
+	 * Ramps the volume over the first rampFrames, then holds it. Each
+	 * frame is also scaled by the gain. Returns the volume reached.
+	 */
+	private static float scale(float[] buffer, int offset, int frames, 
+			float volume, float incr, int rampFrames, float gain) {
+		final int rampEnd = offset + rampFrames;
+		final int end = offset + frames;
+		int i = offset;
+		for (; i < rampEnd; i++) {
+			volume += incr;
+			buffer[i] *= volume * gain;
+		}
+		KERNELS.scale(buffer, i, end - i, volume * gain);
+		return volume;
+	}
+	
+	//////// UTILITIES ////////
+	private int nextStart(int currentIdx) {
+		configurePlanner();
+		return planner.next(random, currentIdx);
+	}
+	
+	private void planSlices() {
+		configurePlanner();
+		
+		// Where the slice now playing will be when it starts to fade out.
+		final int body = Math.max(1, sliceSize - (2 * overlap));
+		float fadeOut;
+		switch (stateswitch) {
+			case 0: fadeOut = cursor.idxA + countdownIdx * cursor.speed; break;
+			case 1: fadeOut = cursor.idxB + (countdownIdx + body) * cursor.speed; break;
+			case 2: fadeOut = cursor.idxB + countdownIdx * cursor.speed; break;
+			default: fadeOut = cursor.idxA + (countdownIdx + body) * cursor.speed;
+		}
+		planner.refill(random, (int)fadeOut);
+	}
+	
+	// Need to narrow the range when using faster speed, which the 
+	// planner does from the highest speed the cursor will reach. While
+	// a ramp or a speed automation runs that ceiling is only raised, 
+	// never lowered, so the plan is not redrawn on every block as the
+	// speed falls. It settles once the speed does.
+	private float planSpeed;
+	private void configurePlanner() {
+		final float needed = Math.max(speedCeiling, 
+				Math.max(cursor.speed, cursor.targetSpeed));
+		if (needed > planSpeed 
+				|| (cursor.targetSpeedSteps == 0 && speedCeiling == 0)) {
+			planSpeed = needed;
+		}
+		planner.configure(audioFrames, sliceSize, overlap, planSpeed, 
+				combFilterPadding, spliceIndex);
 	}
 	
 	private boolean isProposedSliceSizeOK(int proposedSliceSize) {
@@ -506,14 +1547,14 @@ public class AudioDicer {
 		 * 		> ALSO, the slice must remain at least 2X the size 
 		 * 		> of the overlap.
 		 */
-		if (proposedSliceSize < overlap * 2) return false;
+		if (proposedSliceSize < requestedOverlap * 2) return false;
 		
 		int impliedSliceSize = proposedSliceSize;
 		
-		double adjSpeed = Math.max(cursor.speed, cursor.targetSpeed);
+		double adjSpeed = requestedSpeed;
 		if (adjSpeed > 1) {
-			impliedSliceSize = 
-					(int)((proposedSliceSize + 2 * combFilterPadding) * adjSpeed);
+			impliedSliceSize = (int)((proposedSliceSize 
+					+ 2 * requestedCombFilterPadding) * adjSpeed);
 		}
 		
 		return (impliedSliceSize * 2 < audioFrames); 
@@ -525,10 +1566,11 @@ public class AudioDicer {
 		 * 		> should be over at least 50% of entire cue.
 		 * 		> The 50% figure is an arbitrary choice.
 		 */
-		int adjSliceSize = Math.max(sliceSize, newSliceSize);
+		int adjSliceSize = requestedSliceSize;
 		int impliedSliceSize = adjSliceSize;
 		if (proposedSpeed > 1) {
-			impliedSliceSize = (int)((adjSliceSize + 2 * combFilterPadding) * proposedSpeed);
+			impliedSliceSize = (int)((adjSliceSize 
+					+ 2 * requestedCombFilterPadding) * proposedSpeed);
 		}
 
 		return impliedSliceSize * 2 < audioFrames; 
@@ -0,0 +1,93 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFormat;
+
+/*
+ * Where a DicerPlayer sends its encoded blocks. write() is called from
+ * the player's writer thread only, and is expected to block as needed
+ * to keep pace with playback, as SourceDataLine.write() does. A sink 
+ * that returns at once lets the player run as fast as it can render,
+ * and should say so through isRealTime().
+ */
+public interface AudioSink {
+	
+	void open(AudioFormat format) throws IOException;
+	
+	/*
+	 * Writes all len bytes, whole frames only.
+	 */
+	void write(byte[] buffer, int offset, int len) throws IOException;
+	
+	void close() throws IOException;
+	
+	/*
+	 * Whether write() keeps pace with playback. When it does not, the 
+	 * player waits for each block to be rendered rather than filling 
+	 * in with silence, so nothing is counted as an underrun.
+	 */
+	default boolean isRealTime() { return true; }
+	
+	/*
+	 * The default output device, with a line buffer of the given number
+	 * of frames. A smaller buffer lowers the latency of parameter 
+	 * changes but leaves less slack for the player's threads.
+	 */
+	static AudioSink line(int bufferFrames) {
+		return new LineSink(bufferFrames);
+	}
+	
+	/*
+	 * Discards the audio. If paced, write() waits as a device would, so
+	 * that the player can be run and its underruns counted headless.
+	 */
+	static AudioSink discard(boolean paced) {
+		return new NullSink(paced);
+	}
+	
+	/*
+	 * Writes a WAV file, replacing it if it exists. The header is 
+	 * completed on close(). The encoder must be little-endian.
+	 */
+	static AudioSink file(Path file) {
+		return new FileSink(file);
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+
+/*
+ * A scheduled change to a dicer's speed, volume or pan: a ramp, an 
+ * envelope or an LFO. Hand one to AudioDicer.automate(). It is then 
+ * evaluated at the dicer's control rate, and the value is interpolated
+ * linearly between control points inside the block, so the game 
+ * thread no longer has to call a setter on every tick.
+ * 
+ * Automations are immutable and can be shared between dicers. Times 
+ * are in seconds, measured from when the automation starts.
+ */
+public abstract class Automation {
+	
+	/*
+	 * The shape of a ramp or envelope segment, mapping its progress 
+	 * [0..1] to the fraction of the change made. EASE_IN starts slowly
+	 * and EASE_OUT finishes slowly, both quadratically. S_CURVE does 
+	 * both (smoothstep).
+	 */
+	public enum Curve { LINEAR, EASE_IN, EASE_OUT, S_CURVE;
+		
+		double apply(double x) {
+			switch (this) {
+			case EASE_IN: return x * x;
+			case EASE_OUT: return 1 - (1 - x) * (1 - x);
+			case S_CURVE: return x * x * (3 - 2 * x);
+			case LINEAR:
+			default: return x;
+			}
+		}
+	}
+	
+	public enum Waveform { SINE, TRIANGLE }
+	
+	Automation() {}
+	
+	/*
+	 * The value at the given time, for an automation that started when
+	 * the parameter stood at the given value.
+	 */
+	abstract double valueAt(double seconds, double from);
+	
+	/*
+	 * Seconds until the final value is reached, or infinity if the 
+	 * automation runs until replaced or cancelled.
+	 */
+	abstract double getDuration();
+	
+	/*
+	 * The highest value the automation can reach. Speed automations 
+	 * are checked against the cue length with it.
+	 */
+	abstract double getMaxValue(double from);
+	
+	/*
+	 * From wherever the parameter stands to the target, over the 
+	 * duration.
+	 */
+	public static Automation ramp(double target, double seconds, 
+			Curve curve) {
+		if (!(seconds >= 0)) {
+			throw new IllegalArgumentException("Negative ramp time: " + seconds);
+		}
+		return new Envelope(new double[] {seconds}, new double[] {target}, 
+				curve);
+	}
+	
+	/*
+	 * Ramps through a series of points given as time, value pairs, with 
+	 * the times ascending. The first segment starts from wherever the 
+	 * parameter stands at time 0. The last value is held.
+	 */
+	public static Automation envelope(Curve curve, double... timeValuePairs) {
+		if (timeValuePairs.length < 2 || timeValuePairs.length % 2 != 0) {
+			throw new IllegalArgumentException(
+					"Envelope needs time, value pairs.");
+		}
+		final int n = timeValuePairs.length / 2;
+		double[] times = new double[n];
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			times[i] = timeValuePairs[2 * i];
+			values[i] = timeValuePairs[2 * i + 1];
+			if (!(times[i] >= (i == 0 ? 0 : times[i - 1]))) {
+				throw new IllegalArgumentException(
+						"Envelope times must ascend from 0: " + times[i]);
+			}
+		}
+		return new Envelope(times, values, curve);
+	}
+	
+	/*
+	 * Oscillates around the centre, depth either side, at rate cycles 
+	 * per second, until replaced or cancelled.
+	 */
+	public static Automation lfo(Waveform waveform, double centre, 
+			double depth, double rate) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("LFO rate must be positive: " 
+					+ rate);
+		}
+		return new Lfo(waveform, centre, Math.abs(depth), rate);
+	}
+	
+	private static final class Envelope extends Automation {
+		
+		private final double[] times;
+		private final double[] values;
+		private final Curve curve;
+		
+		Envelope(double[] times, double[] values, Curve curve) {
+			this.times = times;
+			this.values = values;
+			this.curve = curve;
+		}
+
+		@Override
+		double valueAt(double seconds, double from) {
+			int i = 0;
+			while (i < times.length && seconds >= times[i]) i++;
+			if (i == times.length) return values[i - 1];
+			
+			final double t0 = i == 0 ? 0 : times[i - 1];
+			final double v0 = i == 0 ? from : values[i - 1];
+			final double x = (seconds - t0) / (times[i] - t0);
+			return v0 + (values[i] - v0) * curve.apply(x);
+		}
+
+		@Override
+		double getDuration() { return times[times.length - 1]; }
+
+		@Override
+		double getMaxValue(double from) {
+			return Math.max(from, Arrays.stream(values).max().getAsDouble());
+		}
+	}
+	
+	private static final class Lfo extends Automation {
+		
+		private final Waveform waveform;
+		private final double centre, depth, rate;
+		
+		Lfo(Waveform waveform, double centre, double depth, double rate) {
+			this.waveform = waveform;
+			this.centre = centre;
+			this.depth = depth;
+			this.rate = rate;
+		}
+
+		@Override
+		double valueAt(double seconds, double from) {
+			final double phase = seconds * rate;
+			final double wave;
+			if (waveform == Waveform.TRIANGLE) {
+				final double p = phase - Math.floor(phase);
+				wave = p < 0.25 ? 4 * p : p < 0.75 ? 2 - 4 * p : 4 * p - 4;
+			} else {
+				wave = Math.sin(2 * Math.PI * phase);
+			}
+			return centre + depth * wave;
+		}
+
+		@Override
+		double getDuration() { return Double.POSITIVE_INFINITY; }
+
+		@Override
+		double getMaxValue(double from) { return centre + depth; }
+	}
+}
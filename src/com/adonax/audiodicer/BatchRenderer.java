@@ -0,0 +1,261 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+
+/*
+ * Renders one long variation as independent chunks, several at once,
+ * for offline generation. Each chunk is played by its own copy of the
+ * prototype dicer, seeded from a stream derived from the batch seed, 
+ * and runs a seam's length past its end. The overrun is cross-faded 
+ * (equal power) into the start of the next chunk.
+ * 
+ * The output depends only on the prototype's settings, the seed, the 
+ * chunk and seam lengths and the block size, not on the number of 
+ * threads or how they are scheduled. 
+ */
+public class BatchRenderer {
+	
+	private final AudioDicer prototype;
+	private final long seed;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private AudioEncoder encoder = StandardEncoder.PCM16_LE;
+	private int chunkFrames = 44100 * 10;
+	private int seamFrames = 4096;
+	private int blockFrames = 1024;
+	
+	/*
+	 * The prototype's settings are copied when each batch starts, on 
+	 * the thread calling render(), and the chunks are copied from that
+	 * snapshot. Changes made to the prototype during a batch apply 
+	 * from the next one. It need not be running, and is not rendered 
+	 * from.
+	 */
+	public BatchRenderer(AudioDicer prototype, long seed) {
+		if (prototype.getCue() == null) {
+			throw new IllegalArgumentException("Prototype has no cue.");
+		}
+		this.prototype = prototype;
+		this.seed = seed;
+	}
+	
+	public void setPool(ForkJoinPool pool) { this.pool = pool; }
+	
+	public void setEncoder(AudioEncoder encoder) {
+		if (encoder.getAudioFormat(44100).isBigEndian()) {
+			throw new IllegalArgumentException("WAV data must be little-endian.");
+		}
+		this.encoder = encoder; 
+	}
+	
+	public void setChunkFrames(int chunkFrames) {
+		if (chunkFrames <= seamFrames) {
+			throw new IllegalArgumentException(
+					"Chunk must be longer than the seam: " + chunkFrames);
+		}
+		this.chunkFrames = chunkFrames;
+	}
+	public int getChunkFrames() { return chunkFrames; }
+	
+	public void setSeamFrames(int seamFrames) {
+		if (seamFrames < 1 || seamFrames >= chunkFrames) {
+			throw new IllegalArgumentException(
+					"Seam must be from one frame up to the chunk length: " 
+					+ seamFrames);
+		}
+		this.seamFrames = seamFrames;
+	}
+	public int getSeamFrames() { return seamFrames; }
+	
+	public void setBlockFrames(int blockFrames) {
+		if (blockFrames < 1) {
+			throw new IllegalArgumentException("Block must be at least one frame.");
+		}
+		this.blockFrames = blockFrames;
+	}
+	
+	/*
+	 * Renders the whole batch into the given buffers.
+	 */
+	public void render(float[] left, float[] right, int offset, int frames) {
+		renderChunks(snapshot(), frames, new Output() {
+			int idx = offset;
+			@Override
+			public void write(float[] l, float[] r, int frames) {
+				System.arraycopy(l, 0, left, idx, frames);
+				System.arraycopy(r, 0, right, idx, frames);
+				idx += frames;
+			}
+		});
+	}
+	
+	/*
+	 * Renders the batch to a WAV file, replacing it if it exists. Only
+	 * one group of chunks, as many as the pool has threads, is held in
+	 * memory at a time.
+	 */
+	public void render(Path file, long frames) throws IOException {
+		final AudioDicer settings = snapshot();
+		final float sampleRate = settings.getCue().getSampleRate();
+		final int bytesPerFrame = encoder.getBytesPerFrame();
+		if (frames * bytesPerFrame > OfflineRenderer.MAX_DATA_BYTES) {
+			throw new IllegalArgumentException(
+					"Too long for a WAV file: " + frames + " frames.");
+		}
+		
+		try (FileChannel channel = FileChannel.open(file, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(
+					chunkFrames * bytesPerFrame);
+			channel.position(OfflineRenderer.HEADER_BYTES);
+			try {
+				renderChunks(settings, frames, (l, r, n) -> {
+					buffer.clear();
+					encoder.encode(l, r, 0, n, buffer);
+					buffer.flip();
+					while (buffer.hasRemaining()) channel.write(buffer);
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			
+			ByteBuffer header = OfflineRenderer.wavHeader(
+					encoder.getAudioFormat(sampleRate), frames * bytesPerFrame);
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		}
+	}
+	
+	/*
+	 * Receives the finished output in order, one chunk at a time.
+	 */
+	private interface Output {
+		void write(float[] left, float[] right, int frames) throws IOException;
+	}
+	
+	/*
+	 * A private, never started copy of the prototype, taken on the 
+	 * calling thread as the prototype's copy constructor requires. The
+	 * pool threads only read it.
+	 */
+	private AudioDicer snapshot() {
+		return new AudioDicer(prototype, seed);
+	}
+	
+	private void renderChunks(AudioDicer settings, long frames, 
+			Output output) {
+		final int chunks = (int)((frames + chunkFrames - 1) / chunkFrames);
+		final long[] seeds = new long[chunks];
+		SplittableRandom seeder = new SplittableRandom(seed);
+		for (int i = 0; i < chunks; i++) {
+			seeds[i] = seeder.nextLong();
+		}
+		
+		final FadeTable seam = FadeTable.get(CrossFadeMode.SINE, seamFrames);
+		final float[] tailL = new float[seamFrames];
+		final float[] tailR = new float[seamFrames];
+		final int group = Math.max(1, pool.getParallelism());
+		
+		for (int first = 0; first < chunks; first += group) {
+			List<ForkJoinTask<float[][]>> tasks = new ArrayList<>();
+			for (int i = first; i < Math.min(chunks, first + group); i++) {
+				final long start = (long)i * chunkFrames;
+				final int body = (int)Math.min(chunkFrames, frames - start);
+				final int length = i < chunks - 1 ? body + seamFrames : body;
+				final long chunkSeed = seeds[i];
+				tasks.add(pool.submit(() -> 
+						renderChunk(settings, chunkSeed, length)));
+			}
+			
+			for (int t = 0; t < tasks.size(); t++) {
+				final int i = first + t;
+				final float[][] chunk = tasks.get(t).join();
+				final int body = (int)Math.min(chunkFrames, 
+						frames - (long)i * chunkFrames);
+				
+				if (i > 0) {
+					// A short last chunk ends part way through the seam.
+					final int fade = Math.min(seamFrames, body);
+					for (int k = 0; k < fade; k++) {
+						chunk[0][k] = chunk[0][k] * seam.in[k] 
+								+ tailL[k] * seam.out[k];
+						chunk[1][k] = chunk[1][k] * seam.in[k] 
+								+ tailR[k] * seam.out[k];
+					}
+				}
+				if (i < chunks - 1) {
+					System.arraycopy(chunk[0], body, tailL, 0, seamFrames);
+					System.arraycopy(chunk[1], body, tailR, 0, seamFrames);
+				}
+				try {
+					output.write(chunk[0], chunk[1], body);
+				} catch (IOException e) {
+					for (ForkJoinTask<float[][]> task : tasks) task.cancel(false);
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+	
+	private float[][] renderChunk(AudioDicer settings, long chunkSeed, 
+			int length) {
+		AudioDicer dicer = new AudioDicer(settings, chunkSeed);
+		dicer.start();
+		float[][] chunk = new float[2][length];
+		for (int idx = 0; idx < length; idx += blockFrames) {
+			dicer.render(chunk[0], chunk[1], idx, 
+					Math.min(blockFrames, length - idx));
+		}
+		return chunk;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+/*
+ * An immutable, decoded audio asset. A Cue is loaded once and can be 
+ * attached to any number of AudioDicer instances, each of which keeps 
+ * only its own cursor, random and fade state. Since the sample data is 
+ * never written after construction, a Cue can be shared across threads.
+ */
+public final class Cue {
+
+	public static final float DEFAULT_SAMPLE_RATE = 44100;
+	
+	/*
+	 * How the samples are held in memory. FLOAT (the default) costs 4 
+	 * bytes per sample; the SHORT options cost 2, with samples scaled to
+	 * float as they are read. SHORT_PLANAR keeps one array per channel, 
+	 * SHORT_INTERLEAVED keeps whole frames together, and SHORT_OFF_HEAP
+	 * is interleaved in a direct buffer, outside the Java heap. 
+	 * FLOAT_OFF_HEAP is the 4-byte equivalent. Cues mapped from a cue 
+	 * file report one of the OFF_HEAP options.
+	 */
+	public enum Storage { FLOAT, SHORT_PLANAR, SHORT_INTERLEAVED, 
+		SHORT_OFF_HEAP, FLOAT_OFF_HEAP }
+	
+	// Internal audio format is normalized signed pcm, mono or stereo.
+	// For stereo, channel 0 = left and 1 = right track. Mono cues keep
+	// their single channel, and are rendered once and then copied.
+	final SampleStore samples;
+	private final float sampleRate;
+	
+	Cue(SampleStore samples, float sampleRate) {
+		this(samples, sampleRate, null);
+	}
+	
+	Cue(SampleStore samples, float sampleRate, SpliceIndex spliceIndex) {
+		this.samples = samples;
+		this.sampleRate = sampleRate;
+		this.spliceIndex = spliceIndex;
+	}
+	
+	Cue(float[][] data, float sampleRate) {
+		this(new SampleStore.Floats(data), sampleRate);
+	}
+	
+	public int getFrameCount() { return samples.frames; }
+	public int getChannels() { return samples.channels; }
+	public float getSampleRate() { return sampleRate; }
+	public Storage getStorage() { return samples.getStorage(); }
+	public long getSizeInBytes() { return samples.getSizeInBytes(); }
+	
+	/*
+	 * The cue's splice candidates, analysed on the first call and kept
+	 * with the cue. Call it once after loading to take the cost up 
+	 * front. Concurrent first calls may each build an index, but the 
+	 * results are equal, so no lock is needed.
+	 */
+	private volatile SpliceIndex spliceIndex;
+	public SpliceIndex getSpliceIndex() {
+		SpliceIndex index = spliceIndex;
+		if (index == null) {
+			index = SpliceIndex.build(samples);
+			spliceIndex = index;
+		}
+		return index;
+	}
+	
+	/*
+	 * Returns this cue converted to the given sample rate, or this cue
+	 * if it is already at that rate. See Resampler. The conversion is
+	 * kept with the cue, so dicers sharing the cue at the same output
+	 * rate share one converted copy. It is held in the same storage, 
+	 * except that mapped cues convert to the heap equivalent.
+	 */
+	private volatile Cue resampled;
+	public Cue atSampleRate(float rate) {
+		if (Math.round(rate) == Math.round(sampleRate)) return this;
+		Cue converted = resampled;
+		if (converted == null || converted.sampleRate != rate) {
+			converted = new Cue(Resampler.resample(samples, sampleRate, rate), 
+					rate);
+			switch (getStorage()) {
+			case SHORT_OFF_HEAP: 
+				converted = converted.withStorage(Storage.SHORT_INTERLEAVED);
+				break;
+			case FLOAT_OFF_HEAP:
+				break;
+			default:
+				converted = converted.withStorage(getStorage());
+			}
+			resampled = converted;
+		}
+		return converted;
+	}
+	
+	/*
+	 * Returns a copy of this cue held in the given storage, or this cue
+	 * if it already is. Converting 16-bit sources to a SHORT storage
+	 * loses nothing.
+	 */
+	public Cue withStorage(Storage storage) {
+		if (storage == getStorage()) return this;
+		return new Cue(SampleStore.convert(samples, storage), sampleRate, 
+				spliceIndex);
+	}
+	
+	///////////////////// LOAD Data /////////////////////
+	// allow option of loading PCM data directly
+	/////////////////////////////////////////////////////
+	public static Cue fromPCM(float[] audioData, Tracks tracks) {
+		return fromPCM(audioData, tracks, DEFAULT_SAMPLE_RATE);
+	}
+	
+	public static Cue fromPCM(float[] audioData, Tracks tracks, 
+			float sampleRate) {
+		
+		int n = audioData.length;
+		float[][] data = null;
+		switch (tracks) {
+			case MONO:
+				data = new float[][] { audioData.clone() };
+				break;
+			case STEREO:
+				data = new float[2][n/2];
+				for (int i = 0; i < n; i += 2) {
+					data[0][i/2] = audioData[i];
+					data[1][i/2] = audioData[i + 1];
+				}
+		}
+		
+		return new Cue(data, sampleRate);
+	}
+	
+	// load from URL
+	public static Cue fromWAV(URL url) 
+			throws UnsupportedAudioFileException, IOException {
+		return WavDecoder.read(url);
+	}
+	
+	public static Cue fromWAV(Path path) 
+			throws UnsupportedAudioFileException, IOException {
+		return WavDecoder.read(path);
+	}
+	
+	/*
+	 * Decodes straight into the given storage, a block at a time, so 
+	 * loading a SHORT cue never holds a float copy of the whole file.
+	 */
+	public static Cue fromWAV(URL url, Storage storage) 
+			throws UnsupportedAudioFileException, IOException {
+		return WavDecoder.read(url, storage);
+	}
+	
+	public static Cue fromWAV(Path path, Storage storage) 
+			throws UnsupportedAudioFileException, IOException {
+		return WavDecoder.read(path, storage);
+	}
+	
+	/*
+	 * Maps a file written by writeCueFile(). Nothing is decoded or 
+	 * copied: the samples are read from the mapping as the cue plays, 
+	 * and processes mapping the same file share its pages.
+	 */
+	public static Cue fromCueFile(Path path) throws IOException {
+		return CueFile.map(path);
+	}
+	
+	/*
+	 * Writes the decoded samples, as 16-bit if the cue is held in a 
+	 * SHORT storage and as float otherwise, together with the splice 
+	 * index.
+	 */
+	public void writeCueFile(Path path) throws IOException {
+		CueFile.write(this, path);
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A decoded cue laid out on disk so that it can be memory-mapped and 
+ * played without decoding or copying. All values are little-endian.
+ * 
+ *   offset  size
+ *     0      4   magic, "ADCU"
+ *     4      4   format version, 1
+ *     8      4   channels
+ *    12      4   sample rate (float)
+ *    16      4   sample type: 0 = float32, 1 = int16
+ *    20      4   frame count
+ *    24      8   offset of the sample data
+ *    32      8   offset of the splice index, or 0 if absent
+ *    40      4   splice index entries, which may be 0
+ *    44     20   reserved, zero
+ *    
+ * The samples follow as interleaved frames, and the splice index as 
+ * ascending int32 frame positions. Both start on a 64-byte boundary.
+ * A cue with no splice candidates still stores its (empty) index at a
+ * real offset, so that the loader does not analyse it again.
+ * Mapped buffers are limited to 2GB, and so is the sample data.
+ */
+final class CueFile {
+
+	private static final int MAGIC = 0x55434441; // "ADCU", read LE
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 64;
+	private static final int ALIGNMENT = 64;
+	private static final int FLOAT32 = 0;
+	private static final int INT16 = 1;
+	
+	private CueFile() {}
+	
+	static void write(Cue cue, Path path) throws IOException {
+		final SampleStore samples = cue.samples;
+		final int type;
+		switch (cue.getStorage()) {
+			case SHORT_PLANAR:
+			case SHORT_INTERLEAVED:
+			case SHORT_OFF_HEAP:
+				type = INT16;
+				break;
+			default:
+				type = FLOAT32;
+		}
+		final int bytesPerSample = type == INT16 ? 2 : 4;
+		final long dataBytes = (long)samples.frames * samples.channels 
+				* bytesPerSample;
+		if (dataBytes > Integer.MAX_VALUE) {
+			throw new IOException("Cue too large to map: " + dataBytes + " bytes.");
+		}
+		final SpliceIndex index = cue.getSpliceIndex();
+		final long spliceOffset = align(HEADER_BYTES + dataBytes);
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(samples.channels);
+		header.putFloat(cue.getSampleRate());
+		header.putInt(type);
+		header.putInt(samples.frames);
+		header.putLong(HEADER_BYTES);
+		header.putLong(spliceOffset);
+		header.putInt(index.getCount());
+		header.clear();
+		
+		try (FileChannel channel = FileChannel.open(path, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			writeFully(channel, header);
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < samples.frames; i++) {
+				if (buffer.remaining() < samples.channels * bytesPerSample) {
+					buffer.flip();
+					writeFully(channel, buffer);
+					buffer.clear();
+				}
+				for (int c = 0; c < samples.channels; c++) {
+					final float val = samples.get(c, i);
+					if (type == INT16) {
+						buffer.putShort((short)Math.max(-32768, 
+								Math.min(32767, Math.round(val * 32768))));
+					} else {
+						buffer.putFloat(val);
+					}
+				}
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+			
+			buffer.clear();
+			buffer.limit((int)(spliceOffset - HEADER_BYTES - dataBytes));
+			while (buffer.hasRemaining()) buffer.put((byte)0);
+			buffer.flip();
+			writeFully(channel, buffer);
+			
+			buffer.clear();
+			for (int k = 0; k < index.getCount(); k++) {
+				if (buffer.remaining() < 4) {
+					buffer.flip();
+					writeFully(channel, buffer);
+					buffer.clear();
+				}
+				buffer.putInt(index.getPosition(k));
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+	}
+	
+	static Cue map(Path path) throws IOException {
+		final MappedByteBuffer file;
+		try (FileChannel channel = FileChannel.open(path, 
+				StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException("Not a cue file: " + path);
+			}
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Cue file too large to map: " + path);
+			}
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		file.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (file.getInt(0) != MAGIC) {
+			throw new IOException("Not a cue file: " + path);
+		}
+		if (file.getInt(4) != VERSION) {
+			throw new IOException("Unsupported cue file version " 
+					+ file.getInt(4) + ": " + path);
+		}
+		final int channels = file.getInt(8);
+		final float sampleRate = file.getFloat(12);
+		final int type = file.getInt(16);
+		final int frames = file.getInt(20);
+		final long dataOffset = file.getLong(24);
+		final long spliceOffset = file.getLong(32);
+		final int spliceCount = file.getInt(40);
+		
+		if (channels < 1 || channels > 2 || frames < 1 
+				|| (type != FLOAT32 && type != INT16)) {
+			throw new IOException("Corrupt cue file header: " + path);
+		}
+		final long dataBytes = (long)frames * channels * (type == INT16 ? 2 : 4);
+		final long spliceBytes = 4L * spliceCount;
+		if (dataOffset < HEADER_BYTES || dataOffset + dataBytes > file.capacity()
+				|| spliceCount < 0 || (spliceOffset != 0 && (spliceOffset < dataOffset 
+						+ dataBytes || spliceOffset + spliceBytes > file.capacity()))) {
+			throw new IOException("Truncated cue file: " + path);
+		}
+		
+		final ByteBuffer data = slice(file, dataOffset, dataBytes);
+		final SampleStore samples = type == INT16 
+				? new SampleStore.InterleavedShorts(data.asShortBuffer(), 
+						frames, channels, Cue.Storage.SHORT_OFF_HEAP)
+				: new SampleStore.InterleavedFloats(data.asFloatBuffer(), 
+						frames, channels);
+		
+		// The index is small, so it is copied to the heap. With no index 
+		// stored, the cue builds its own when first asked.
+		SpliceIndex index = null;
+		if (spliceOffset != 0) {
+			int[] positions = new int[spliceCount];
+			slice(file, spliceOffset, spliceBytes).asIntBuffer().get(positions);
+			index = new SpliceIndex(positions);
+		}
+		return new Cue(samples, sampleRate, index);
+	}
+	
+	private static ByteBuffer slice(ByteBuffer file, long offset, long length) {
+		ByteBuffer view = file.duplicate();
+		view.position((int)offset).limit((int)(offset + length));
+		return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static long align(long offset) {
+		return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) 
+			throws IOException {
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/*
+ * Presents a RenderSource as an AudioInputStream, for javax.sound APIs
+ * such as AudioSystem.write() or Clip.open(). The stream ends after 
+ * the given number of frames, or never if the length is 
+ * AudioSystem.NOT_SPECIFIED. It also ends when the source's render()
+ * returns a negative count, as from a dicer that was never started or
+ * a stopped LayeredDicer.
+ */
+public class DicerAudioInputStream extends AudioInputStream {
+	
+	public DicerAudioInputStream(RenderSource source, float sampleRate) {
+		this(source, StandardEncoder.PCM16_LE, sampleRate, 
+				AudioSystem.NOT_SPECIFIED);
+	}
+	
+	public DicerAudioInputStream(RenderSource source, AudioEncoder encoder, 
+			float sampleRate, long frameLimit) {
+		super(new RenderStream(source, encoder), 
+				encoder.getAudioFormat(sampleRate), frameLimit);
+	}
+	
+	/*
+	 * AudioInputStream takes care of the frame limit and of rounding 
+	 * requests down to whole frames, so this only has to render and
+	 * encode.
+	 */
+	private static class RenderStream extends InputStream {
+		
+		private static final int BLOCK_FRAMES = 4096;
+		
+		private final RenderSource source;
+		private final AudioEncoder encoder;
+		private final float[] left = new float[BLOCK_FRAMES];
+		private final float[] right = new float[BLOCK_FRAMES];
+		private final byte[] single;
+		
+		RenderStream(RenderSource source, AudioEncoder encoder) {
+			this.source = source;
+			this.encoder = encoder;
+			single = new byte[encoder.getBytesPerFrame()];
+		}
+		
+		@Override
+		public int read() throws IOException {
+			// Only reachable with one-byte frames.
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int bytesPerFrame = encoder.getBytesPerFrame();
+			int frames = len / bytesPerFrame;
+			if (frames == 0) return 0;
+			
+			int written = 0;
+			while (frames > 0) {
+				int block = Math.min(frames, BLOCK_FRAMES);
+				if (source.render(left, right, 0, block) < 0) {
+					return written == 0 ? -1 : written;
+				}
+				written += encoder.encode(left, right, 0, block, b, off + written);
+				frames -= block;
+			}
+			return written;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counters for one AudioDicer, cheap enough to leave on. The render
+ * counters are written only by the audio thread, into fields and a 
+ * fixed histogram, so recording takes two nanoTime() calls and a few
+ * stores per block and allocates nothing. Readers may see values a 
+ * block stale. The rejection counters are written by the control 
+ * thread.
+ * 
+ * Register with the platform MBean server to see them in JConsole or
+ * VisualVM. Slice transitions and slow renders are also raised as JFR
+ * events, which can be lined up against GC pauses and other threads
+ * in a flight recording to tell whether a dropout came from the dicer.
+ * Those live in DicerMetricsJfr, which is not loaded until an event 
+ * is due.
+ */
+public final class DicerMetrics implements DicerMetricsMBean {
+	
+	// Bucket b holds times from 2^(b-1) up to 2^b - 1 nanos.
+	private static final int BUCKETS = 64;
+	
+	// Checked without touching DicerMetricsJfr, so loading a dicer 
+	// never loads jdk.jfr classes.
+	private static final boolean JFR = 
+			ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+	
+	private final AudioDicer dicer;
+	private ObjectName objectName;
+	
+	// Audio thread.
+	private final long[] histogram = new long[BUCKETS];
+	private volatile long framesRendered, renderCalls, renderNanos;
+	private volatile long renderNanosMax, slowRenders, sliceSwitches;
+	private volatile long virtualFrames;
+	private volatile boolean resetRequested;
+	private volatile double slowRenderFraction = 0.5;
+	
+	// Control thread.
+	private final AtomicLong rejectedSpeed = new AtomicLong();
+	private final AtomicLong rejectedSliceSize = new AtomicLong();
+	private final AtomicLong droppedChanges = new AtomicLong();
+	
+	DicerMetrics(AudioDicer dicer) {
+		this.dicer = dicer;
+	}
+	
+	/*
+	 * Registers under com.adonax.audiodicer:type=AudioDicer,name=<name>.
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		if (objectName != null) {
+			throw new IllegalStateException("Already registered as " 
+					+ objectName);
+		}
+		ObjectName on = new ObjectName("com.adonax.audiodicer:type=AudioDicer,name=" 
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		objectName = on;
+	}
+	
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+	
+	/////////////// Recording (audio thread) ///////////////
+	
+	void recordRender(int frames, long nanos, float sampleRate, 
+			int virtual) {
+		if (resetRequested) {
+			clear();
+		}
+		framesRendered += frames;
+		if (virtual > 0) {
+			virtualFrames += virtual;
+		}
+		renderCalls++;
+		renderNanos += nanos;
+		if (nanos > renderNanosMax) {
+			renderNanosMax = nanos;
+		}
+		histogram[BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos))]++;
+		
+		final double budget = frames * 1e9 / sampleRate;
+		if (nanos > budget * slowRenderFraction) {
+			slowRenders++;
+			if (JFR) {
+				DicerMetricsJfr.slowRender(frames, nanos, (long)budget);
+			}
+		}
+	}
+	
+	void recordSliceSwitch(long from, long to, int sliceSize, int overlap, 
+			float speed) {
+		sliceSwitches++;
+		if (JFR) {
+			DicerMetricsJfr.sliceSwitch(from, to, sliceSize, overlap, speed);
+		}
+	}
+	
+	private void clear() {
+		resetRequested = false;
+		Arrays.fill(histogram, 0);
+		framesRendered = renderCalls = renderNanos = 0;
+		renderNanosMax = slowRenders = sliceSwitches = virtualFrames = 0;
+	}
+	
+	/////////////// Recording (control thread) ///////////////
+	
+	void recordRejectedSpeed() { rejectedSpeed.incrementAndGet(); }
+	void recordRejectedSliceSize() { rejectedSliceSize.incrementAndGet(); }
+	void recordDroppedChange() { droppedChanges.incrementAndGet(); }
+	
+	/////////////// MBean attributes ///////////////
+	
+	@Override
+	public long getFramesRendered() { return framesRendered; }
+	@Override
+	public long getRenderCalls() { return renderCalls; }
+	@Override
+	public long getVirtualFrames() { return virtualFrames; }
+	
+	@Override
+	public long getRenderNanosMean() {
+		final long calls = renderCalls;
+		return calls == 0 ? 0 : renderNanos / calls;
+	}
+	@Override
+	public long getRenderNanosMax() { return renderNanosMax; }
+	@Override
+	public long getRenderNanosP50() { return percentile(0.5); }
+	@Override
+	public long getRenderNanosP99() { return percentile(0.99); }
+	@Override
+	public long getRenderNanosP999() { return percentile(0.999); }
+	
+	/*
+	 * The upper bound of the bucket holding the given fraction of calls.
+	 */
+	private long percentile(double fraction) {
+		long total = 0;
+		for (long count : histogram) total += count;
+		if (total == 0) return 0;
+		
+		final long rank = (long)Math.ceil(total * fraction);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += histogram[b];
+			if (seen >= rank) {
+				return (1L << b) - 1;
+			}
+		}
+		return renderNanosMax;
+	}
+	
+	@Override
+	public long getSlowRenders() { return slowRenders; }
+	@Override
+	public double getSlowRenderFraction() { return slowRenderFraction; }
+	@Override
+	public void setSlowRenderFraction(double fraction) {
+		if (!(fraction > 0)) {
+			throw new IllegalArgumentException(
+					"Slow render fraction must be positive: " + fraction);
+		}
+		slowRenderFraction = fraction;
+	}
+	
+	@Override
+	public long getSliceSwitches() { return sliceSwitches; }
+	@Override
+	public long getRejectedSpeedChanges() { return rejectedSpeed.get(); }
+	@Override
+	public long getRejectedSliceSizeChanges() { return rejectedSliceSize.get(); }
+	@Override
+	public long getDroppedChanges() { return droppedChanges.get(); }
+	
+	@Override
+	public boolean isRunning() { return dicer.getRunning(); }
+	@Override
+	public boolean isVirtual() { return dicer.isVirtual(); }
+	@Override
+	public String getSliceState() { return dicer.getSliceState(); }
+	@Override
+	public int getSliceSize() { return dicer.getSliceSize(); }
+	@Override
+	public int getOverlap() { return dicer.getOverlap(); }
+	@Override
+	public double getSpeed() { return dicer.getSpeed(); }
+	@Override
+	public double getVolume() { return dicer.getVolume(); }
+	@Override
+	public double getPan() { return dicer.getPan(); }
+	
+	@Override
+	public void resetStatistics() {
+		resetRequested = true;
+		rejectedSpeed.set(0);
+		rejectedSliceSize.set(0);
+		droppedChanges.set(0);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * The JFR events raised by DicerMetrics. They are kept out of 
+ * DicerMetrics so that jdk.jfr is only touched once an event is due,
+ * and not at all when the module is absent from the run-time image
+ * (the library requires it statically). DicerMetrics checks for the
+ * module before calling in here.
+ */
+final class DicerMetricsJfr {
+	
+	private static final EventType SLICE_EVENT = 
+			EventType.getEventType(SliceTransitionEvent.class);
+	private static final EventType SLOW_EVENT = 
+			EventType.getEventType(SlowRenderEvent.class);
+	
+	private DicerMetricsJfr() {}
+	
+	static void slowRender(int frames, long nanos, long budget) {
+		if (SLOW_EVENT.isEnabled()) {
+			SlowRenderEvent event = new SlowRenderEvent();
+			event.frames = frames;
+			event.renderTime = nanos;
+			event.budget = budget;
+			event.commit();
+		}
+	}
+	
+	static void sliceSwitch(long from, long to, int sliceSize, int overlap, 
+			float speed) {
+		if (SLICE_EVENT.isEnabled()) {
+			SliceTransitionEvent event = new SliceTransitionEvent();
+			event.from = from;
+			event.to = to;
+			event.sliceSize = sliceSize;
+			event.overlap = overlap;
+			event.speed = speed;
+			event.commit();
+		}
+	}
+	
+	@Name("com.adonax.audiodicer.SliceTransition")
+	@Label("Slice Transition")
+	@Category("AudioDicer")
+	@Description("A cross-fade to a newly chosen slice has begun.")
+	static final class SliceTransitionEvent extends Event {
+		@Label("From Frame") long from;
+		@Label("To Frame") long to;
+		@Label("Slice Size") int sliceSize;
+		@Label("Overlap") int overlap;
+		@Label("Speed") float speed;
+	}
+	
+	@Name("com.adonax.audiodicer.SlowRender")
+	@Label("Slow Render")
+	@Category("AudioDicer")
+	@Description("A render() call took a large share of the real time "
+			+ "its frames will play for.")
+	static final class SlowRenderEvent extends Event {
+		@Label("Frames") int frames;
+		@Label("Render Time") @Timespan long renderTime;
+		@Label("Real-Time Budget") @Timespan long budget;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+/*
+ * The management interface of DicerMetrics, as seen in JConsole or 
+ * any other JMX client. Render times are in nanoseconds per call to
+ * render() (which read() goes through). Percentiles are the upper 
+ * bounds of power-of-two buckets, so are accurate to within 2X.
+ */
+public interface DicerMetricsMBean {
+	
+	long getFramesRendered();
+	long getRenderCalls();
+	
+	/*
+	 * Frames skipped rather than rendered while the voice was virtual.
+	 */
+	long getVirtualFrames();
+	
+	long getRenderNanosMean();
+	long getRenderNanosMax();
+	long getRenderNanosP50();
+	long getRenderNanosP99();
+	long getRenderNanosP999();
+	
+	/*
+	 * Calls taking longer than the given fraction of the real-time 
+	 * duration of the frames rendered. Each also raises a JFR 
+	 * SlowRender event, if enabled.
+	 */
+	long getSlowRenders();
+	double getSlowRenderFraction();
+	void setSlowRenderFraction(double fraction);
+	
+	long getSliceSwitches();
+	long getRejectedSpeedChanges();
+	long getRejectedSliceSizeChanges();
+	long getDroppedChanges();
+	
+	boolean isRunning();
+	boolean isVirtual();
+	String getSliceState();
+	int getSliceSize();
+	int getOverlap();
+	double getSpeed();
+	double getVolume();
+	double getPan();
+	
+	/*
+	 * Clears the counters and the histogram. Takes effect on the next
+	 * call to render().
+	 */
+	void resetStatistics();
+}
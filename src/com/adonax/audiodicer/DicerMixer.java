@@ -0,0 +1,283 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Owns a set of AudioDicer voices and sums them, each with its own gain,
+ * into one stereo output. A single output line can then serve many 
+ * voices, rather than one thread and SourceDataLine per voice.
+ * 
+ * For large voice counts, the voices can be split into partitions that
+ * render on a ForkJoinPool. Each partition sums its voices, in order, 
+ * into its own buffer and the partition buffers are then added, also 
+ * in order. The result depends on the partition count but never on 
+ * thread scheduling.
+ * 
+ * Voices may be added, removed and re-gained from a control thread 
+ * while render() runs on the audio thread.
+ */
+public class DicerMixer implements RenderSource {
+
+	private final int MAX_BLOCK_FRAMES = 1024;
+	
+	private static final class Voice {
+		final AudioDicer dicer;
+		volatile float gain;
+		float appliedGain; // audio thread only, for ramping per block
+		
+		Voice(AudioDicer dicer, float gain) {
+			this.dicer = dicer;
+			this.gain = gain;
+			this.appliedGain = gain;
+		}
+	}
+	
+	// Copy-on-write, so render() always sees a consistent array.
+	private volatile Voice[] voices = new Voice[0];
+	
+	private ForkJoinPool pool;
+	private int partitions = 1;
+	private int parallelThreshold = 16;
+	private Partition[] partitionTasks = new Partition[0];
+	
+	public DicerMixer() {}
+	
+	//////////////////// Voices ///////////////////
+	public synchronized void addVoice(AudioDicer dicer, double gain) {
+		Voice[] next = Arrays.copyOf(voices, voices.length + 1);
+		next[voices.length] = new Voice(dicer, (float)gain);
+		voices = next;
+	}
+	
+	public synchronized boolean removeVoice(AudioDicer dicer) {
+		Voice[] current = voices;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].dicer == dicer) {
+				Voice[] next = new Voice[current.length - 1];
+				System.arraycopy(current, 0, next, 0, i);
+				System.arraycopy(current, i + 1, next, i, next.length - i);
+				voices = next;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void setGain(AudioDicer dicer, double gain) {
+		for (Voice voice : voices) {
+			if (voice.dicer == dicer) {
+				voice.gain = (float)gain;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Not a voice of this mixer.");
+	}
+	
+	public int getVoiceCount() { return voices.length; }
+	
+	//////////////////// Parallelism ///////////////////
+	/*
+	 * Splits the voices into the given number of partitions, rendered on
+	 * the given pool, once there are at least parallelThreshold voices. 
+	 * The calling (audio) thread renders the first partition itself.
+	 * Not to be called while render() is running.
+	 */
+	public void setParallelism(ForkJoinPool pool, int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("Partitions must be at least 1: " 
+					+ partitions);
+		}
+		this.pool = pool;
+		this.partitions = pool == null ? 1 : partitions;
+		partitionTasks = new Partition[this.partitions];
+		for (int i = 0; i < this.partitions; i++) {
+			partitionTasks[i] = new Partition();
+		}
+	}
+	
+	public void setParallelThreshold(int voiceCount) {
+		parallelThreshold = voiceCount;
+	}
+	public int getParallelThreshold() { return parallelThreshold; }
+	
+	/*
+	 * Renders a contiguous range of voices and sums them into its own
+	 * buffers. Tasks are reinitialized and reused, so steady-state 
+	 * rendering does not allocate.
+	 */
+	private final class Partition extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		final float[] sumL = new float[MAX_BLOCK_FRAMES];
+		final float[] sumR = new float[MAX_BLOCK_FRAMES];
+		final float[] voiceL = new float[MAX_BLOCK_FRAMES];
+		final float[] voiceR = new float[MAX_BLOCK_FRAMES];
+		Voice[] voices;
+		int first, last, frames;
+		
+		@Override
+		protected void compute() {
+			Arrays.fill(sumL, 0, frames, 0);
+			Arrays.fill(sumR, 0, frames, 0);
+			for (int v = first; v < last; v++) {
+				mixVoice(voices[v], sumL, sumR, 0, voiceL, voiceR, frames);
+			}
+		}
+	}
+	
+	//////////////////// Rendering ///////////////////
+	private final float[] voiceL = new float[MAX_BLOCK_FRAMES];
+	private final float[] voiceR = new float[MAX_BLOCK_FRAMES];
+	
+	@Override
+	public int render(float[] left, float[] right, int offset, int frames) {
+		final Voice[] current = voices;
+		final int end = offset + frames;
+		for (int blockStart = offset; blockStart < end; 
+				blockStart += MAX_BLOCK_FRAMES) {
+			final int blockFrames = Math.min(MAX_BLOCK_FRAMES, end - blockStart);
+			if (partitions > 1 && current.length >= parallelThreshold) {
+				renderParallel(current, left, right, blockStart, blockFrames);
+			} else {
+				Arrays.fill(left, blockStart, blockStart + blockFrames, 0);
+				Arrays.fill(right, blockStart, blockStart + blockFrames, 0);
+				for (Voice voice : current) {
+					mixVoice(voice, left, right, blockStart, 
+							voiceL, voiceR, blockFrames);
+				}
+			}
+		}
+		return frames;
+	}
+	
+	private void renderParallel(Voice[] current, float[] left, float[] right,
+			int offset, int frames) {
+		final int n = partitionTasks.length;
+		for (int p = 0; p < n; p++) {
+			Partition task = partitionTasks[p];
+			task.reinitialize();
+			task.voices = current;
+			task.first = (int)((long)current.length * p / n);
+			task.last = (int)((long)current.length * (p + 1) / n);
+			task.frames = frames;
+			if (p > 0) {
+				pool.execute(task);
+			}
+		}
+		partitionTasks[0].invoke();
+		
+		// Deterministic reduction: always partition order.
+		System.arraycopy(partitionTasks[0].sumL, 0, left, offset, frames);
+		System.arraycopy(partitionTasks[0].sumR, 0, right, offset, frames);
+		for (int p = 1; p < n; p++) {
+			Partition task = partitionTasks[p];
+			task.join();
+			final float[] sumL = task.sumL;
+			final float[] sumR = task.sumR;
+			for (int i = 0; i < frames; i++) {
+				left[offset + i] += sumL[i];
+				right[offset + i] += sumR[i];
+			}
+		}
+	}
+	
+	/*
+	 * Renders one voice into the scratch buffers and adds it into the 
+	 * sum, ramping from the previously applied gain over the block.
+	 */
+	private static void mixVoice(Voice voice, float[] sumL, float[] sumR, 
+			int offset, float[] scratchL, float[] scratchR, int frames) {
+		
+		if (!voice.dicer.getRunning()) return;
+		voice.dicer.render(scratchL, scratchR, 0, frames);
+		
+		final float target = voice.gain;
+		if (voice.dicer.wasBlockVirtual()) {
+			// Silent, so there is nothing to add.
+			voice.appliedGain = target;
+			return;
+		}
+		float gain = voice.appliedGain;
+		final float gainIncr = (target - gain) / frames;
+		for (int i = 0; i < frames; i++) {
+			gain += gainIncr;
+			sumL[offset + i] += scratchL[i] * gain;
+			sumR[offset + i] += scratchR[i] * gain;
+		}
+		voice.appliedGain = target;
+	}
+	
+	//////////////////// Measurement ///////////////////
+	/*
+	 * Renders the given number of blocks of all voices on the calling 
+	 * thread and reports how many voices a single core sustains in real
+	 * time at that buffer size. Note that this advances the voices.
+	 */
+	public double measureVoicesPerCore(int bufferFrames, int blocks, 
+			float sampleRate) {
+		
+		final Voice[] current = voices;
+		if (current.length == 0) return 0;
+		
+		float[] left = new float[bufferFrames];
+		float[] right = new float[bufferFrames];
+		
+		long startNanos = System.nanoTime();
+		for (int b = 0; b < blocks; b++) {
+			Arrays.fill(left, 0);
+			Arrays.fill(right, 0);
+			for (int blockStart = 0; blockStart < bufferFrames; 
+					blockStart += MAX_BLOCK_FRAMES) {
+				final int blockFrames = 
+						Math.min(MAX_BLOCK_FRAMES, bufferFrames - blockStart);
+				for (Voice voice : current) {
+					mixVoice(voice, left, right, blockStart, 
+							voiceL, voiceR, blockFrames);
+				}
+			}
+		}
+		long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+		
+		double renderedNanos = (double)bufferFrames * blocks / sampleRate * 1e9;
+		return current.length * renderedNanos / elapsedNanos;
+	}
+}
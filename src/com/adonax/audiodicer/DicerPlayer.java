@@ -0,0 +1,317 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Plays a RenderSource to an AudioSink on two threads of its own. The
+ * render thread keeps a ring of encoded blocks topped up, and the 
+ * writer thread hands them to the sink, which blocks at the pace of 
+ * playback. A GC pause or a slow render then eats into the blocks 
+ * rendered ahead, rather than the device's own buffer.
+ * 
+ * If the ring runs dry, the writer plays a block of silence and counts
+ * an underrun, and the render-ahead target is raised by a block, up 
+ * to the maximum. After a long enough stretch without one, it is 
+ * lowered again by a block, down to the minimum, to win the latency 
+ * back. The ring is a single-producer/single-consumer queue of 
+ * preallocated blocks, so neither thread allocates or locks once 
+ * started.
+ * 
+ * The source must be started before the player. Its setters can be 
+ * called from a control thread as usual. If the source stops 
+ * rendering, the player plays out what is left and closes the sink.
+ * 
+ * If the source, the encoder or the sink throws, both threads stop 
+ * and the sink is closed. The first such failure is kept for 
+ * getFailure().
+ */
+public class DicerPlayer {
+	
+	// Seconds played without an underrun before render-ahead is lowered.
+	private static final double RELAX_SECONDS = 30;
+	
+	private final RenderSource source;
+	private final AudioSink sink;
+	private final float sampleRate;
+	private AudioEncoder encoder = StandardEncoder.PCM16_LE;
+	private int blockFrames = 512;
+	private int minAhead = 2;
+	private int maxAhead = 16;
+	
+	// The ring: blocks between head and tail are rendered and waiting.
+	private byte[][] blocks;
+	private final AtomicLong head = new AtomicLong(); // next to write out
+	private final AtomicLong tail = new AtomicLong(); // next to render
+	private volatile int renderAhead;
+	
+	private volatile boolean running;
+	private volatile boolean sourceEnded;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private Thread renderThread, writerThread;
+	
+	private volatile long underruns, blocksPlayed;
+	private volatile long maxRenderAhead;
+	
+	public DicerPlayer(RenderSource source, AudioSink sink, float sampleRate) {
+		this.source = source;
+		this.sink = sink;
+		this.sampleRate = sampleRate;
+	}
+	
+	public void setEncoder(AudioEncoder encoder) {
+		checkStopped();
+		this.encoder = encoder;
+	}
+	
+	/*
+	 * Frames per rendered block, and so the step by which render-ahead
+	 * is adjusted.
+	 */
+	public void setBlockFrames(int blockFrames) {
+		checkStopped();
+		if (blockFrames < 1) {
+			throw new IllegalArgumentException("Block must be at least one frame.");
+		}
+		this.blockFrames = blockFrames;
+	}
+	
+	/*
+	 * The range, in blocks, over which render-ahead adapts. Playback 
+	 * starts at the minimum. Setting both the same fixes it. 
+	 */
+	public void setRenderAhead(int minBlocks, int maxBlocks) {
+		checkStopped();
+		if (minBlocks < 1 || maxBlocks < minBlocks) {
+			throw new IllegalArgumentException("Render-ahead rejected: " 
+					+ minBlocks + " to " + maxBlocks);
+		}
+		minAhead = minBlocks;
+		maxAhead = maxBlocks;
+	}
+	
+	private void checkStopped() {
+		if (running) {
+			throw new IllegalStateException("Stop the player first.");
+		}
+	}
+	
+	/*
+	 * Opens the sink and starts the threads. The sink is closed when 
+	 * the player stops.
+	 */
+	public synchronized void start() throws IOException {
+		checkStopped();
+		sink.open(encoder.getAudioFormat(sampleRate));
+		
+		final int blockBytes = blockFrames * encoder.getBytesPerFrame();
+		if (blocks == null || blocks.length != maxAhead 
+				|| blocks[0].length != blockBytes) {
+			blocks = new byte[maxAhead][blockBytes];
+		}
+		head.set(0);
+		tail.set(0);
+		renderAhead = minAhead;
+		maxRenderAhead = minAhead;
+		underruns = blocksPlayed = 0;
+		sourceEnded = false;
+		failure.set(null);
+		running = true;
+		
+		renderThread = new Thread(this::renderLoop, "DicerPlayer-render");
+		writerThread = new Thread(this::writeLoop, "DicerPlayer-writer");
+		renderThread.setPriority(Thread.MAX_PRIORITY);
+		writerThread.setPriority(Thread.MAX_PRIORITY);
+		renderThread.setDaemon(true);
+		writerThread.setDaemon(true);
+		renderThread.start();
+		writerThread.start();
+	}
+	
+	/*
+	 * Stops both threads, waiting for them, and closes the sink.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		running = false;
+		if (renderThread != null) {
+			LockSupport.unpark(renderThread);
+			renderThread.join();
+			writerThread.join();
+			renderThread = writerThread = null;
+		}
+	}
+	
+	/*
+	 * False once stopped, or once the source has stopped and the ring
+	 * has been played out.
+	 */
+	public boolean isPlaying() { return running; }
+	
+	/*
+	 * What stopped the player, if a thread of its own failed: the first
+	 * exception thrown by the source, the encoder or the sink since 
+	 * start(). Null if it stopped normally or is still playing.
+	 */
+	public Throwable getFailure() { return failure.get(); }
+	
+	/*
+	 * Keeps the first failure and stops both threads. The writer 
+	 * closes the sink on its way out.
+	 */
+	private void fail(Throwable t) {
+		failure.compareAndSet(null, t);
+		running = false;
+		LockSupport.unpark(renderThread);
+	}
+	
+	//////////////////// Render thread ///////////////////
+	private void renderLoop() {
+		final float[] left = new float[blockFrames];
+		final float[] right = new float[blockFrames];
+		final long parkNanos = (long)(blockFrames * 1e9 / sampleRate / 4);
+		
+		try {
+			while (running) {
+				final long t = tail.get();
+				if (t - head.get() >= renderAhead) {
+					// Woken early by the writer when it takes a block.
+					LockSupport.parkNanos(parkNanos);
+					continue;
+				}
+				if (source.render(left, right, 0, blockFrames) < 0) {
+					sourceEnded = true;
+					return;
+				}
+				encoder.encode(left, right, 0, blockFrames, 
+						blocks[(int)(t % blocks.length)], 0);
+				tail.lazySet(t + 1); // publishes the block
+			}
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+	
+	//////////////////// Writer thread ///////////////////
+	private void writeLoop() {
+		final byte[] silence = new byte[blocks[0].length];
+		final long relaxBlocks = (long)(RELAX_SECONDS * sampleRate / blockFrames);
+		final boolean realTime = sink.isRealTime();
+		long sinceUnderrun = 0;
+		
+		try {
+			// Let the ring fill before playing the first block.
+			while (running && !sourceEnded 
+					&& tail.get() - head.get() < renderAhead) {
+				LockSupport.parkNanos(100_000);
+			}
+			while (running) {
+				final long h = head.get();
+				if (h == tail.get()) {
+					// Re-read, as the last block may land just before the end.
+					if (sourceEnded && h == tail.get()) break;
+					if (!realTime) {
+						LockSupport.parkNanos(50_000);
+						continue;
+					}
+					sink.write(silence, 0, silence.length);
+					underruns++;
+					sinceUnderrun = 0;
+					if (renderAhead < maxAhead) {
+						renderAhead++;
+						if (renderAhead > maxRenderAhead) {
+							maxRenderAhead = renderAhead;
+						}
+					}
+					continue;
+				}
+				final byte[] block = blocks[(int)(h % blocks.length)];
+				sink.write(block, 0, block.length);
+				head.lazySet(h + 1); // hands the block back
+				LockSupport.unpark(renderThread);
+				blocksPlayed++;
+				
+				if (++sinceUnderrun >= relaxBlocks && renderAhead > minAhead) {
+					renderAhead--;
+					sinceUnderrun = 0;
+				}
+			}
+		} catch (Throwable t) {
+			fail(t);
+		} finally {
+			running = false;
+			try {
+				sink.close();
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+	}
+	
+	//////////////////// Statistics ///////////////////
+	/*
+	 * Blocks of silence played because the ring ran dry.
+	 */
+	public long getUnderruns() { return underruns; }
+	
+	public long getBlocksPlayed() { return blocksPlayed; }
+	
+	/*
+	 * The current render-ahead target, and the highest it has reached
+	 * since start(), in blocks.
+	 */
+	public int getRenderAhead() { return renderAhead; }
+	public long getMaxRenderAhead() { return maxRenderAhead; }
+	
+	/*
+	 * Blocks rendered and waiting to be written.
+	 */
+	public int getBufferedBlocks() { 
+		return (int)Math.max(0, tail.get() - head.get()); 
+	}
+	
+	/*
+	 * The latency added by the render-ahead target, not counting the
+	 * sink's own buffer.
+	 */
+	public double getLatencyMillis() {
+		return renderAhead * blockFrames * 1000.0 / sampleRate;
+	}
+}
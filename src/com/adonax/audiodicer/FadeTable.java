@@ -0,0 +1,127 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleUnaryOperator;
+
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+
+/*
+ * Precomputed fade-in and fade-out gains for one overlap length, so 
+ * that a cross-fade costs a multiply-add per channel per frame. Entry 
+ * k holds the gains for normal = (k + 1) / overlap, matching the 
+ * ratio the fade reaches on its k-th frame.
+ * 
+ * Tables for the built-in curves are shared between dicers through a 
+ * small cache. They are built on the thread that sets the overlap or 
+ * mode, never on the audio thread.
+ */
+final class FadeTable {
+
+	private static final int CACHE_LIMIT = 64;
+	private static final ConcurrentHashMap<Long, FadeTable> cache = 
+			new ConcurrentHashMap<>();
+	
+	final float[] in;
+	final float[] out;
+	
+	private FadeTable(int overlap) {
+		in = new float[overlap];
+		out = new float[overlap];
+	}
+	
+	static FadeTable get(CrossFadeMode mode, int overlap) {
+		long key = ((long)mode.ordinal() << 32) | (overlap & 0xffffffffL);
+		FadeTable table = cache.get(key);
+		if (table == null) {
+			if (cache.size() >= CACHE_LIMIT) {
+				cache.clear();
+			}
+			table = build(mode, overlap);
+			cache.putIfAbsent(key, table);
+		}
+		return table;
+	}
+	
+	/*
+	 * The curve gives the fade-in gain over [0..1]. The fade-out is 
+	 * its mirror image.
+	 */
+	static FadeTable build(DoubleUnaryOperator curve, int overlap) {
+		FadeTable table = new FadeTable(overlap);
+		for (int k = 0; k < overlap; k++) {
+			double normal = (k + 1) / (double)overlap;
+			table.in[k] = (float)curve.applyAsDouble(normal);
+			table.out[k] = (float)curve.applyAsDouble(1 - normal);
+		}
+		return table;
+	}
+	
+	/*
+	 * A hard switch at the midpoint. The mirrored curve would give 0 on
+	 * both sides at normal == 0.5, so the out table is built as the 
+	 * complement instead: A stays at full gain through the midpoint, 
+	 * as in the original switch, and exactly one side plays per frame.
+	 */
+	private static FadeTable buildSwitch(int overlap) {
+		FadeTable table = new FadeTable(overlap);
+		for (int k = 0; k < overlap; k++) {
+			double normal = (k + 1) / (double)overlap;
+			table.in[k] = normal <= 0.5 ? 0 : 1;
+			table.out[k] = 1 - table.in[k];
+		}
+		return table;
+	}
+	
+	private static FadeTable build(CrossFadeMode mode, int overlap) {
+		switch (mode) {
+		case NONE: 
+			return buildSwitch(overlap);
+		case LINEAR:
+			return build(n -> n, overlap);
+		case SINE:
+			return build(n -> Math.sin(Math.PI / 2 * n), overlap);
+		case EQUAL_POWER:
+			return build(n -> Math.sqrt(n), overlap);
+		case RAISED_COSINE:
+			return build(n -> 0.5 - 0.5 * Math.cos(Math.PI * n), overlap);
+		default:
+			throw new IllegalArgumentException("No built-in curve for: " + mode);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+/*
+ * Writes a WAV file through a FileChannel, as OfflineRenderer does,
+ * but at whatever pace the player delivers.
+ */
+final class FileSink implements AudioSink {
+	
+	private final Path file;
+	private FileChannel channel;
+	private AudioFormat format;
+	private long dataBytes;
+	
+	FileSink(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public void open(AudioFormat format) throws IOException {
+		if (format.isBigEndian()) {
+			throw new IllegalArgumentException("WAV data must be little-endian.");
+		}
+		this.format = format;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, 
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		channel.position(OfflineRenderer.HEADER_BYTES);
+		dataBytes = 0;
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int len) throws IOException {
+		if (dataBytes + len > OfflineRenderer.MAX_DATA_BYTES) {
+			throw new IOException("WAV file full: " + file);
+		}
+		ByteBuffer bb = ByteBuffer.wrap(buffer, offset, len);
+		while (bb.hasRemaining()) channel.write(bb);
+		dataBytes += len;
+	}
+
+	@Override
+	public boolean isRealTime() { return false; }
+
+	@Override
+	public void close() throws IOException {
+		if (channel == null) return;
+		try {
+			ByteBuffer header = OfflineRenderer.wavHeader(format, dataBytes);
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			channel.close();
+			channel = null;
+		}
+	}
+}
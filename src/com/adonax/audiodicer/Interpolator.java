@@ -0,0 +1,470 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+/*
+ * Reads a run of frames from a sample store at a fractional,
+ * possibly ramping, position. Each method advances the position by the
+ * speed once per frame, before reading, and returns the final position.
+ * As with the original linear code, reads are clamped to the last frame
+ * of the source. Each mode comes in a stereo form, and a mono form that
+ * reads only the first channel.
+ * 
+ * Every mode also has a copy of its loops that indexes the arrays of a
+ * float store directly. The store's get() is a virtual call per tap, 
+ * and once cues of more than one storage have been rendered in a JVM 
+ * the call site goes megamorphic, halving the speed of the float path.
+ * The storage is checked once per run instead. The two copies of each
+ * loop must stay alike, down to the clamping at the ends of the cue,
+ * so that a cue renders the same whichever storage holds it.
+ * 
+ * The modes, cheapest first:
+ * 		NONE:	drop-sample, no interpolation at all
+ * 		LINEAR:	two-point linear interpolation
+ * 		CUBIC:	four-point cubic Hermite (Catmull-Rom)
+ * 		SINC:	band-limited windowed sinc. The kernel is read from a 
+ * 				precomputed table of phases. Above speed 1 the cutoff
+ * 				is lowered to 1/speed to suppress aliasing, which 
+ * 				widens the kernel: 16 taps per channel at speed 1, 
+ * 				64 at speed 4. Taps that fall outside the cue read
+ * 				as silence.
+ */
+final class Interpolator {
+
+	private Interpolator() {}
+	
+	static float dropSample(SampleStore src, float[] dstL, float[] dstR, 
+			int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			final float[][] data = ((SampleStore.Floats)src).data;
+			return dropSample(data[0], data[1], src.frames, dstL, dstR, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final int intIdx = (int)Math.min(idx, lastPos);
+			dstL[i] = src.get(0, intIdx);
+			dstR[i] = src.get(1, intIdx);
+		}
+		return idx;
+	}
+	
+	static float dropSample(SampleStore src, float[] dst, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			return dropSample(((SampleStore.Floats)src).data[0], src.frames, dst, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			dst[i] = src.get(0, (int)Math.min(idx, lastPos));
+		}
+		return idx;
+	}
+	
+	static float linear(SampleStore src, float[] dstL, float[] dstR, 
+			int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			final float[][] data = ((SampleStore.Floats)src).data;
+			return linear(data[0], data[1], src.frames, dstL, dstR, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int intIdx = (int)pos;
+			final float fracB = pos - intIdx;
+			final float fracA = (intIdx + 1) - pos;
+			dstL[i] = src.get(0, intIdx + 1) * fracB 
+					+ src.get(0, intIdx) * fracA;
+			dstR[i] = src.get(1, intIdx + 1) * fracB 
+					+ src.get(1, intIdx) * fracA;
+		}
+		return idx;
+	}
+	
+	static float linear(SampleStore src, float[] dst, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			return linear(((SampleStore.Floats)src).data[0], src.frames, dst, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int intIdx = (int)pos;
+			dst[i] = src.get(0, intIdx + 1) * (pos - intIdx) 
+					+ src.get(0, intIdx) * ((intIdx + 1) - pos);
+		}
+		return idx;
+	}
+	
+	static float cubic(SampleStore src, float[] dstL, float[] dstR, 
+			int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			final float[][] data = ((SampleStore.Floats)src).data;
+			return cubic(data[0], data[1], src.frames, dstL, dstR, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		final int lastIdx = src.frames - 1;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int i1 = (int)pos;
+			final int i0 = Math.max(i1 - 1, 0);
+			final int i3 = Math.min(i1 + 2, lastIdx);
+			final float x = pos - i1;
+			dstL[i] = hermite(src.get(0, i0), src.get(0, i1), 
+					src.get(0, i1 + 1), src.get(0, i3), x);
+			dstR[i] = hermite(src.get(1, i0), src.get(1, i1), 
+					src.get(1, i1 + 1), src.get(1, i3), x);
+		}
+		return idx;
+	}
+	
+	static float cubic(SampleStore src, float[] dst, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			return cubic(((SampleStore.Floats)src).data[0], src.frames, dst, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		final int lastIdx = src.frames - 1;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int i1 = (int)pos;
+			dst[i] = hermite(src.get(0, Math.max(i1 - 1, 0)), src.get(0, i1), 
+					src.get(0, i1 + 1), src.get(0, Math.min(i1 + 2, lastIdx)), 
+					pos - i1);
+		}
+		return idx;
+	}
+	
+	private static float hermite(float y0, float y1, float y2, float y3, 
+			float x) {
+		final float c1 = 0.5f * (y2 - y0);
+		final float c2 = y0 - 2.5f * y1 + 2 * y2 - 0.5f * y3;
+		final float c3 = 0.5f * (y3 - y0) + 1.5f * (y1 - y2);
+		return ((c3 * x + c2) * x + c1) * x + y1;
+	}
+	
+	////////////////// Windowed Sinc //////////////////
+	private static final int SINC_ZERO_CROSSINGS = 8;
+	private static final int SINC_PHASES = 256;
+	/*
+	 * One side of the kernel, SINC_PHASES entries per zero crossing. 
+	 * The table runs one crossing past the window, zero filled, so the
+	 * widened kernel at lowered cutoffs never needs a bounds check.
+	 */
+	private static final float[] SINC_TABLE = 
+			new float[(SINC_ZERO_CROSSINGS + 1) * SINC_PHASES + 2];
+	static {
+		final int windowEnd = SINC_ZERO_CROSSINGS * SINC_PHASES;
+		SINC_TABLE[0] = 1;
+		for (int j = 1; j <= windowEnd; j++) {
+			double x = (double)j / SINC_PHASES;
+			double sinc = Math.sin(Math.PI * x) / (Math.PI * x);
+			// Blackman window over the half width
+			double t = x / SINC_ZERO_CROSSINGS;
+			double window = 0.42 + 0.5 * Math.cos(Math.PI * t) 
+					+ 0.08 * Math.cos(2 * Math.PI * t);
+			SINC_TABLE[j] = (float)(sinc * window);
+		}
+	}
+	
+	static float sinc(SampleStore src, float[] dstL, float[] dstR, 
+			int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			final float[][] data = ((SampleStore.Floats)src).data;
+			return sinc(data[0], data[1], src.frames, dstL, dstR, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		final int lastIdx = src.frames - 1;
+		
+		// One cutoff for the whole run, taken from its fastest speed.
+		final float maxSpeed = Math.max(speed, speed + speedIncr * frames);
+		final float cutoff = maxSpeed > 1 ? 1 / maxSpeed : 1;
+		final float step = cutoff * SINC_PHASES;
+		final int halfWidth = (int)Math.ceil(SINC_ZERO_CROSSINGS / cutoff);
+		final float[] table = SINC_TABLE;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int center = (int)pos;
+			final int first = Math.max(center - halfWidth + 1, 0);
+			final int last = Math.min(center + halfWidth, lastIdx);
+			float sumL = 0;
+			float sumR = 0;
+			for (int k = first; k <= last; k++) {
+				final float t = Math.abs(pos - k) * step;
+				final int ti = (int)t;
+				final float w = table[ti] + (table[ti + 1] - table[ti]) * (t - ti);
+				sumL += src.get(0, k) * w;
+				sumR += src.get(1, k) * w;
+			}
+			dstL[i] = sumL * cutoff;
+			dstR[i] = sumR * cutoff;
+		}
+		return idx;
+	}
+	
+	static float sinc(SampleStore src, float[] dst, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		if (src instanceof SampleStore.Floats) {
+			return sinc(((SampleStore.Floats)src).data[0], src.frames, dst, 
+					offset, frames, idx, speed, speedIncr);
+		}
+		final float lastPos = src.frames - 2;
+		final int lastIdx = src.frames - 1;
+		
+		final float maxSpeed = Math.max(speed, speed + speedIncr * frames);
+		final float cutoff = maxSpeed > 1 ? 1 / maxSpeed : 1;
+		final float step = cutoff * SINC_PHASES;
+		final int halfWidth = (int)Math.ceil(SINC_ZERO_CROSSINGS / cutoff);
+		final float[] table = SINC_TABLE;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int center = (int)pos;
+			final int first = Math.max(center - halfWidth + 1, 0);
+			final int last = Math.min(center + halfWidth, lastIdx);
+			float sum = 0;
+			for (int k = first; k <= last; k++) {
+				final float t = Math.abs(pos - k) * step;
+				final int ti = (int)t;
+				final float w = table[ti] + (table[ti + 1] - table[ti]) * (t - ti);
+				sum += src.get(0, k) * w;
+			}
+			dst[i] = sum * cutoff;
+		}
+		return idx;
+	}
+	
+	////////////////// Float store //////////////////
+	// The same loops, reading the channel arrays of a float store.
+	
+	private static float dropSample(float[] srcL, float[] srcR, 
+			int srcFrames, float[] dstL, float[] dstR, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final int intIdx = (int)Math.min(idx, lastPos);
+			dstL[i] = srcL[intIdx];
+			dstR[i] = srcR[intIdx];
+		}
+		return idx;
+	}
+	
+	private static float dropSample(float[] src, int srcFrames, 
+			float[] dst, int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			dst[i] = src[(int)Math.min(idx, lastPos)];
+		}
+		return idx;
+	}
+	
+	private static float linear(float[] srcL, float[] srcR, 
+			int srcFrames, float[] dstL, float[] dstR, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int intIdx = (int)pos;
+			final float fracB = pos - intIdx;
+			final float fracA = (intIdx + 1) - pos;
+			dstL[i] = srcL[intIdx + 1] * fracB + srcL[intIdx] * fracA;
+			dstR[i] = srcR[intIdx + 1] * fracB + srcR[intIdx] * fracA;
+		}
+		return idx;
+	}
+	
+	private static float linear(float[] src, int srcFrames, 
+			float[] dst, int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int intIdx = (int)pos;
+			dst[i] = src[intIdx + 1] * (pos - intIdx) 
+					+ src[intIdx] * ((intIdx + 1) - pos);
+		}
+		return idx;
+	}
+	
+	private static float cubic(float[] srcL, float[] srcR, 
+			int srcFrames, float[] dstL, float[] dstR, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		final int lastIdx = srcFrames - 1;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int i1 = (int)pos;
+			final int i0 = Math.max(i1 - 1, 0);
+			final int i3 = Math.min(i1 + 2, lastIdx);
+			final float x = pos - i1;
+			dstL[i] = hermite(srcL[i0], srcL[i1], srcL[i1 + 1], srcL[i3], x);
+			dstR[i] = hermite(srcR[i0], srcR[i1], srcR[i1 + 1], srcR[i3], x);
+		}
+		return idx;
+	}
+	
+	private static float cubic(float[] src, int srcFrames, 
+			float[] dst, int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		final int lastIdx = srcFrames - 1;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int i1 = (int)pos;
+			dst[i] = hermite(src[Math.max(i1 - 1, 0)], src[i1], 
+					src[i1 + 1], src[Math.min(i1 + 2, lastIdx)], pos - i1);
+		}
+		return idx;
+	}
+	
+	private static float sinc(float[] srcL, float[] srcR, 
+			int srcFrames, float[] dstL, float[] dstR, int offset, 
+			int frames, float idx, float speed, float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		final int lastIdx = srcFrames - 1;
+		
+		final float maxSpeed = Math.max(speed, speed + speedIncr * frames);
+		final float cutoff = maxSpeed > 1 ? 1 / maxSpeed : 1;
+		final float step = cutoff * SINC_PHASES;
+		final int halfWidth = (int)Math.ceil(SINC_ZERO_CROSSINGS / cutoff);
+		final float[] table = SINC_TABLE;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int center = (int)pos;
+			final int first = Math.max(center - halfWidth + 1, 0);
+			final int last = Math.min(center + halfWidth, lastIdx);
+			float sumL = 0;
+			float sumR = 0;
+			for (int k = first; k <= last; k++) {
+				final float t = Math.abs(pos - k) * step;
+				final int ti = (int)t;
+				final float w = table[ti] + (table[ti + 1] - table[ti]) * (t - ti);
+				sumL += srcL[k] * w;
+				sumR += srcR[k] * w;
+			}
+			dstL[i] = sumL * cutoff;
+			dstR[i] = sumR * cutoff;
+		}
+		return idx;
+	}
+	
+	private static float sinc(float[] src, int srcFrames, 
+			float[] dst, int offset, int frames, float idx, float speed, 
+			float speedIncr) {
+		final float lastPos = srcFrames - 2;
+		final int lastIdx = srcFrames - 1;
+		
+		final float maxSpeed = Math.max(speed, speed + speedIncr * frames);
+		final float cutoff = maxSpeed > 1 ? 1 / maxSpeed : 1;
+		final float step = cutoff * SINC_PHASES;
+		final int halfWidth = (int)Math.ceil(SINC_ZERO_CROSSINGS / cutoff);
+		final float[] table = SINC_TABLE;
+		
+		for (int i = offset, end = offset + frames; i < end; i++) {
+			speed += speedIncr;
+			idx += speed;
+			final float pos = Math.min(idx, lastPos);
+			final int center = (int)pos;
+			final int first = Math.max(center - halfWidth + 1, 0);
+			final int last = Math.min(center + halfWidth, lastIdx);
+			float sum = 0;
+			for (int k = first; k <= last; k++) {
+				final float t = Math.abs(pos - k) * step;
+				final int ti = (int)t;
+				final float w = table[ti] + (table[ti + 1] - table[ti]) * (t - ti);
+				sum += src[k] * w;
+			}
+			dst[i] = sum * cutoff;
+		}
+		return idx;
+	}
+}
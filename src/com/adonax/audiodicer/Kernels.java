@@ -0,0 +1,157 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Optional;
+
+/*
+ * The block loops that dominate render cost once interpolation is out
+ * of the way: gain, the cross-fade mix, summing layers, conversion to 
+ * 16-bit, and the short to float reads of the speed-1 path. 
+ * 
+ * The scalar forms below are always available. When the JVM is started 
+ * with --add-modules jdk.incubator.vector, a Vector API implementation 
+ * (VectorKernels, built from src-vector) is loaded in their place. It 
+ * uses the same operations in the same order, without fused 
+ * multiply-adds, so its results are bit-for-bit identical to the scalar
+ * ones. Set the system property audiodicer.kernels=scalar to keep the 
+ * scalar forms regardless.
+ */
+abstract class Kernels {
+	
+	static final Kernels INSTANCE = load();
+	
+	abstract String getName();
+	
+	/*
+	 * buffer[i] *= gain
+	 */
+	abstract void scale(float[] buffer, int offset, int frames, float gain);
+	
+	/*
+	 * out[i] = out[i] * gainOut[k] + in[j] * gainIn[k], with i, j and k
+	 * running from their offsets.
+	 */
+	abstract void crossfade(float[] out, int outOffset, float[] in, 
+			int inOffset, float[] gainOut, float[] gainIn, int gainOffset, 
+			int frames);
+	
+	/*
+	 * dst[j] = dst[j] + src[i] * gain
+	 */
+	abstract void mix(float[] dst, int dstOffset, float[] src, int offset, 
+			int frames, float gain);
+	
+	/*
+	 * dst[j] = (short)(clamp(src[i], -1, 1) * 32767)
+	 */
+	abstract void clip16(float[] src, int offset, int frames, short[] dst, 
+			int dstOffset);
+	
+	/*
+	 * dst[j] = src[i] * scale
+	 */
+	abstract void toFloats(short[] src, int offset, int frames, float[] dst,
+			int dstOffset, float scale);
+	
+	private static Kernels load() {
+		if ("scalar".equals(System.getProperty("audiodicer.kernels"))) {
+			return new Scalar();
+		}
+		Optional<Module> vector = ModuleLayer.boot()
+				.findModule("jdk.incubator.vector");
+		if (vector.isEmpty()) {
+			return new Scalar();
+		}
+		try {
+			// A named audiodicer module does not declare the dependency.
+			Kernels.class.getModule().addReads(vector.get());
+			return (Kernels)Class.forName("com.adonax.audiodicer.VectorKernels")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new Scalar();
+		}
+	}
+	
+	static final class Scalar extends Kernels {
+		
+		@Override
+		String getName() { return "scalar"; }
+
+		@Override
+		void scale(float[] buffer, int offset, int frames, float gain) {
+			for (int i = offset, end = offset + frames; i < end; i++) {
+				buffer[i] *= gain;
+			}
+		}
+
+		@Override
+		void crossfade(float[] out, int outOffset, float[] in, int inOffset,
+				float[] gainOut, float[] gainIn, int gainOffset, int frames) {
+			for (int n = 0; n < frames; n++) {
+				final int o = outOffset + n;
+				final int k = gainOffset + n;
+				out[o] = out[o] * gainOut[k] + in[inOffset + n] * gainIn[k];
+			}
+		}
+
+		@Override
+		void mix(float[] dst, int dstOffset, float[] src, int offset, 
+				int frames, float gain) {
+			for (int n = 0; n < frames; n++) {
+				dst[dstOffset + n] = dst[dstOffset + n] + src[offset + n] * gain;
+			}
+		}
+
+		@Override
+		void clip16(float[] src, int offset, int frames, short[] dst, 
+				int dstOffset) {
+			for (int n = 0; n < frames; n++) {
+				final float val = src[offset + n];
+				dst[dstOffset + n] = (short)(Math.max(-1f, Math.min(1f, val)) * 32767);
+			}
+		}
+
+		@Override
+		void toFloats(short[] src, int offset, int frames, float[] dst,
+				int dstOffset, float scale) {
+			for (int n = 0; n < frames; n++) {
+				dst[dstOffset + n] = src[offset + n] * scale;
+			}
+		}
+	}
+}
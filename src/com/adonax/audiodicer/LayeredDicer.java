@@ -0,0 +1,238 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Several layers of one cue, each played at its own speed by its own
+ * dicer, rendered and summed as one voice. This is the layered brook
+ * from the README: pitched at 0.25, 0.5, 1 and 2 it becomes a torrent,
+ * and shifting weight toward the slower layers as the listener moves 
+ * away emulates distance rolloff.
+ * 
+ * The layers share the prototype's Cue, so the audio is held once. 
+ * They are rendered in turn over short sub-blocks: the first straight
+ * into the output, the rest into a small scratch buffer that is added
+ * in while still in cache. A four-layer torrent then needs one output
+ * buffer, one line and one thread.
+ * 
+ * Each layer has a gain for near and one for far, and setDistance()
+ * moves every layer's gain between the two. Changes glide over 1024 
+ * frames at 44100 Hz, scaled to the layers' output rate. Layers are 
+ * added before start(); after that, the layer dicers can be reached 
+ * with getLayer() and set as usual.
+ */
+public class LayeredDicer implements RenderSource {
+	
+	private static final int SUB_BLOCK_FRAMES = 256;
+	private static final int GAIN_STEPS = 1024;
+	private static final Kernels KERNELS = Kernels.INSTANCE;
+	
+	private static final class Layer {
+		final AudioDicer dicer;
+		final float nearGain, farGain;
+		float gain, targetGain, gainIncr; // audio thread only
+		int gainSteps;
+		
+		Layer(AudioDicer dicer, float nearGain, float farGain) {
+			this.dicer = dicer;
+			this.nearGain = nearGain;
+			this.farGain = farGain;
+		}
+		
+		float gainAt(double distance) {
+			return (float)(nearGain + (farGain - nearGain) * distance);
+		}
+	}
+	
+	private final AudioDicer prototype;
+	private final SplittableRandom seeds;
+	private Layer[] layers = new Layer[0];
+	
+	private volatile boolean running;
+	private volatile double distance;
+	private double appliedDistance; // audio thread only
+	private int gainSteps = GAIN_STEPS;
+	
+	private final float[] scratchL = new float[SUB_BLOCK_FRAMES];
+	private final float[] scratchR = new float[SUB_BLOCK_FRAMES];
+	
+	/*
+	 * Layers copy the prototype's settings and cue. Each is seeded from
+	 * the given seed in turn, so a LayeredDicer built the same way 
+	 * renders the same audio.
+	 */
+	public LayeredDicer(AudioDicer prototype, long seed) {
+		this.prototype = prototype;
+		this.seeds = new SplittableRandom(seed);
+	}
+	
+	/*
+	 * Adds a layer playing at the given speed, with gains for distance
+	 * 0 (near) and 1 (far). Throws if the speed is too high for the cue
+	 * at the prototype's slice size.
+	 */
+	public AudioDicer addLayer(double speed, double nearGain, double farGain) {
+		if (running) {
+			throw new IllegalStateException("Add layers before start().");
+		}
+		AudioDicer dicer = new AudioDicer(prototype, seeds.nextLong());
+		dicer.setSpeed(speed);
+		Layer layer = new Layer(dicer, (float)nearGain, (float)farGain);
+		layer.gain = layer.targetGain = layer.gainAt(distance);
+		layers = Arrays.copyOf(layers, layers.length + 1);
+		layers[layers.length - 1] = layer;
+		return dicer;
+	}
+	
+	public int getLayerCount() { return layers.length; }
+	public AudioDicer getLayer(int index) { return layers[index].dicer; }
+	
+	/*
+	 * From 0 (near, the default) to 1 (far).
+	 */
+	public void setDistance(double distance) {
+		if (!(distance >= 0 && distance <= 1)) {
+			throw new IllegalArgumentException("Distance rejected: " + distance);
+		}
+		this.distance = distance;
+		if (!running) {
+			appliedDistance = distance;
+			for (Layer layer : layers) {
+				layer.gain = layer.targetGain = layer.gainAt(distance);
+				layer.gainSteps = 0;
+			}
+		}
+	}
+	public double getDistance() { return distance; }
+	
+	public void start() {
+		if (layers.length == 0) {
+			throw new IllegalStateException("No layers to start.");
+		}
+		final double scale = 
+				layers[0].dicer.getOutputSampleRate() / Cue.DEFAULT_SAMPLE_RATE;
+		gainSteps = Math.max(1, (int)Math.round(GAIN_STEPS * scale));
+		for (Layer layer : layers) {
+			layer.dicer.start();
+		}
+		running = true;
+	}
+	
+	public void stop() {
+		running = false;
+	}
+	
+	public boolean getRunning() { return running; }
+	
+	@Override
+	public int render(float[] left, float[] right, int offset, int frames) {
+		if (!running) {
+			System.out.println("Cannot render. Call start() method to run.");
+			return -1;
+		}
+		
+		final double target = distance;
+		if (target != appliedDistance) {
+			for (Layer layer : layers) {
+				layer.targetGain = layer.gainAt(target);
+				layer.gainIncr = (layer.targetGain - layer.gain) / gainSteps;
+				layer.gainSteps = gainSteps;
+			}
+			appliedDistance = target;
+		}
+		
+		final int end = offset + frames;
+		for (int idx = offset; idx < end; idx += SUB_BLOCK_FRAMES) {
+			final int n = Math.min(SUB_BLOCK_FRAMES, end - idx);
+			
+			Layer layer = layers[0];
+			layer.dicer.render(left, right, idx, n);
+			applyGain(layer, left, right, idx, null, null, 0, n);
+			
+			for (int i = 1; i < layers.length; i++) {
+				layer = layers[i];
+				layer.dicer.render(scratchL, scratchR, 0, n);
+				applyGain(layer, scratchL, scratchR, 0, left, right, idx, n);
+			}
+		}
+		return frames;
+	}
+	
+	/*
+	 * Scales the rendered frames by the layer's gain, in place if dstL
+	 * is null, otherwise adding them into dstL and dstR. While the gain
+	 * ramps it is stepped per frame; a steady gain uses the kernels.
+	 */
+	private static void applyGain(Layer layer, float[] srcL, float[] srcR,
+			int srcOffset, float[] dstL, float[] dstR, int dstOffset, 
+			int frames) {
+		int n = 0;
+		if (layer.gainSteps > 0) {
+			final int ramp = Math.min(layer.gainSteps, frames);
+			float gain = layer.gain;
+			for (; n < ramp; n++) {
+				gain += layer.gainIncr;
+				if (dstL == null) {
+					srcL[srcOffset + n] *= gain;
+					srcR[srcOffset + n] *= gain;
+				} else {
+					dstL[dstOffset + n] += srcL[srcOffset + n] * gain;
+					dstR[dstOffset + n] += srcR[srcOffset + n] * gain;
+				}
+			}
+			layer.gainSteps -= ramp;
+			layer.gain = layer.gainSteps == 0 ? layer.targetGain : gain;
+		}
+		
+		final int rest = frames - n;
+		if (rest == 0) return;
+		if (dstL == null) {
+			if (layer.gain != 1) {
+				KERNELS.scale(srcL, srcOffset + n, rest, layer.gain);
+				KERNELS.scale(srcR, srcOffset + n, rest, layer.gain);
+			}
+		} else {
+			KERNELS.mix(dstL, dstOffset + n, srcL, srcOffset + n, rest, 
+					layer.gain);
+			KERNELS.mix(dstR, dstOffset + n, srcR, srcOffset + n, rest, 
+					layer.gain);
+		}
+	}
+}
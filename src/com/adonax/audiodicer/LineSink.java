@@ -0,0 +1,108 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/*
+ * Plays to the default SourceDataLine for the format.
+ */
+final class LineSink implements AudioSink {
+	
+	private static final long RETRY_NANOS = 1_000_000;
+	
+	private final int bufferFrames;
+	private SourceDataLine line;
+	
+	LineSink(int bufferFrames) {
+		if (bufferFrames < 1) {
+			throw new IllegalArgumentException("Buffer must be at least one frame.");
+		}
+		this.bufferFrames = bufferFrames;
+	}
+
+	@Override
+	public void open(AudioFormat format) throws IOException {
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format, bufferFrames * format.getFrameSize());
+		} catch (LineUnavailableException e) {
+			throw new IOException(e);
+		}
+		line.start();
+	}
+
+	/*
+	 * SourceDataLine.write() blocks until all is written, unless the
+	 * line is closed or stopped, when it returns at once. A closed line
+	 * is being shut down, so the rest is dropped. A stopped line fails
+	 * the write, which stops the player, rather than being retried in a
+	 * busy loop.
+	 */
+	@Override
+	public void write(byte[] buffer, int offset, int len) throws IOException {
+		while (len > 0) {
+			int n = line.write(buffer, offset, len);
+			if (n == 0) {
+				if (!line.isOpen()) return;
+				if (!line.isRunning()) {
+					throw new IOException("Line stopped with " + len 
+							+ " bytes unwritten.");
+				}
+				// Not expected of a running line, but never spin on it.
+				LockSupport.parkNanos(RETRY_NANOS);
+			}
+			offset += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (line != null) {
+			line.drain();
+			line.close();
+			line = null;
+		}
+	}
+}
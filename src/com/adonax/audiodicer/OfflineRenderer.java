@@ -0,0 +1,200 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+
+/*
+ * Renders a RenderSource to a WAV file as fast as the CPU allows. 
+ * Blocks are encoded straight into a direct buffer and written to a 
+ * FileChannel, so there is no javax.sound stream in the way. The
+ * header is written last, once the length is known, which lets a 
+ * render end early if the source stops.
+ * 
+ * The source is driven from the calling thread and should not be 
+ * read from anywhere else meanwhile.
+ */
+public class OfflineRenderer {
+	
+	static final int HEADER_BYTES = 44;
+	static final long MAX_DATA_BYTES = 0xffffffffL - (HEADER_BYTES - 8);
+	
+	private final RenderSource source;
+	private final float sampleRate;
+	private AudioEncoder encoder = StandardEncoder.PCM16_LE;
+	private int blockFrames = 1024;
+	private int bufferFrames = 64 * 1024;
+	
+	private long framesWritten;
+	private long elapsedNanos;
+	
+	public OfflineRenderer(RenderSource source, float sampleRate) {
+		this.source = source;
+		this.sampleRate = sampleRate;
+	}
+	
+	/*
+	 * The WAV data format. Must be little-endian.
+	 */
+	public void setEncoder(AudioEncoder encoder) {
+		if (encoder.getAudioFormat(sampleRate).isBigEndian()) {
+			throw new IllegalArgumentException("WAV data must be little-endian.");
+		}
+		this.encoder = encoder;
+	}
+	
+	/*
+	 * The number of frames per render() call. Smaller blocks give 
+	 * timestamped parameter changes finer resolution, larger ones 
+	 * render a little faster.
+	 */
+	public void setBlockFrames(int blockFrames) {
+		if (blockFrames < 1) {
+			throw new IllegalArgumentException("Block must be at least one frame.");
+		}
+		this.blockFrames = blockFrames;
+	}
+	
+	/*
+	 * The number of frames gathered before each write to the file.
+	 */
+	public void setBufferFrames(int bufferFrames) {
+		if (bufferFrames < 1) {
+			throw new IllegalArgumentException("Buffer must be at least one frame.");
+		}
+		this.bufferFrames = bufferFrames;
+	}
+	
+	public long render(Path file, double seconds) throws IOException {
+		return render(file, Math.round(seconds * sampleRate));
+	}
+	
+	/*
+	 * Renders up to the given number of frames to the file, replacing
+	 * it if it exists. Returns the number of frames written, which is
+	 * less than requested if the source stopped rendering.
+	 */
+	public long render(Path file, long frames) throws IOException {
+		final AudioFormat format = encoder.getAudioFormat(sampleRate);
+		final int bytesPerFrame = encoder.getBytesPerFrame();
+		if (frames * bytesPerFrame > MAX_DATA_BYTES) {
+			throw new IllegalArgumentException(
+					"Too long for a WAV file: " + frames + " frames.");
+		}
+		
+		final int block = Math.min(blockFrames, bufferFrames);
+		final float[] left = new float[block];
+		final float[] right = new float[block];
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(
+				bufferFrames / block * block * bytesPerFrame);
+		
+		long done = 0;
+		final long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(file, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			channel.position(HEADER_BYTES);
+			boolean stopped = false;
+			while (done < frames && !stopped) {
+				buffer.clear();
+				while (buffer.remaining() >= block * bytesPerFrame 
+						&& done < frames) {
+					int n = (int)Math.min(block, frames - done);
+					if (source.render(left, right, 0, n) < 0) {
+						stopped = true;
+						break;
+					}
+					encoder.encode(left, right, 0, n, buffer);
+					done += n;
+				}
+				buffer.flip();
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			
+			ByteBuffer header = wavHeader(format, done * bytesPerFrame);
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		}
+		elapsedNanos = System.nanoTime() - start;
+		framesWritten = done;
+		return done;
+	}
+	
+	public long getFramesWritten() { return framesWritten; }
+	
+	public double getElapsedSeconds() { return elapsedNanos / 1e9; }
+	
+	/*
+	 * Seconds of audio produced per second of wall time, for the last 
+	 * render. 
+	 */
+	public double getRealTimeFactor() {
+		return elapsedNanos == 0 ? 0 : 
+			(framesWritten / sampleRate) / getElapsedSeconds();
+	}
+	
+	static ByteBuffer wavHeader(AudioFormat format, long dataBytes) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		int formatTag = format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT 
+				? 3 : 1; // WAVE_FORMAT_IEEE_FLOAT, WAVE_FORMAT_PCM
+		
+		header.put(new byte[] {'R', 'I', 'F', 'F'});
+		header.putInt((int)(dataBytes + HEADER_BYTES - 8));
+		header.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+		header.putInt(16);
+		header.putShort((short)formatTag);
+		header.putShort((short)format.getChannels());
+		header.putInt((int)format.getSampleRate());
+		header.putInt((int)format.getSampleRate() * format.getFrameSize());
+		header.putShort((short)format.getFrameSize());
+		header.putShort((short)format.getSampleSizeInBits());
+		header.put(new byte[] {'d', 'a', 't', 'a'});
+		header.putInt((int)dataBytes);
+		header.flip();
+		return header;
+	}
+}
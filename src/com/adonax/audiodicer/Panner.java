@@ -0,0 +1,186 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+
+/*
+ * Pan laws for a dicer's output. 
+ * 
+ * Constant power: the gains follow sqrt(2) * cos and sqrt(2) * sin of 
+ * the pan position over a quarter turn, read from a table with linear 
+ * interpolation. The scaling by sqrt(2) makes the centre exactly unity,
+ * so a centred dicer sounds as before, and a hard pan raises the near 
+ * side by 3dB. For a stereo cue this acts as a balance control.
+ * 
+ * Delay: the far channel is delayed, by up to MAX_DELAY_MS at a hard 
+ * pan, and the levels are left alone. Short inter-channel delays move 
+ * the image by the precedence (Haas) effect, which holds up better 
+ * than level differences for low-pitched sounds. The delay is 
+ * fractional and ramps with the pan, so moving it does not click.
+ */
+final class Panner {
+	
+	static final double MAX_DELAY_MS = 0.7;
+	
+	private static final int TABLE_SIZE = 1024;
+	private static final float[] GAINS = new float[TABLE_SIZE + 2];
+	static {
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			GAINS[i] = (float)(Math.sqrt(2) * Math.cos(Math.PI / 2 * i / TABLE_SIZE));
+		}
+		GAINS[TABLE_SIZE / 2] = 1;
+		GAINS[TABLE_SIZE] = 0;
+		GAINS[TABLE_SIZE + 1] = 0; // guard for the interpolation
+	}
+	
+	// Delay lines, long enough for MAX_DELAY_MS at 192kHz.
+	private static final int RING_SIZE = 256;
+	private static final int RING_MASK = RING_SIZE - 1;
+	private final float[] ringL = new float[RING_SIZE];
+	private final float[] ringR = new float[RING_SIZE];
+	private int write;
+	private float maxDelayFrames;
+	
+	Panner(float sampleRate) {
+		setSampleRate(sampleRate);
+	}
+	
+	void setSampleRate(float sampleRate) {
+		maxDelayFrames = (float)Math.min(RING_SIZE - 2, 
+				MAX_DELAY_MS * sampleRate / 1000);
+	}
+	
+	static float leftGain(float pan) {
+		return lookup((pan + 1) / 2);
+	}
+	
+	static float rightGain(float pan) {
+		return lookup((1 - pan) / 2);
+	}
+	
+	private static float lookup(float x) {
+		final float pos = x * TABLE_SIZE;
+		final int i = (int)pos;
+		final float frac = pos - i;
+		return GAINS[i] + (GAINS[i + 1] - GAINS[i]) * frac;
+	}
+	
+	/*
+	 * Ramps the constant power gains from pan0 to pan1 over rampFrames, 
+	 * then holds the pan1 gains.
+	 */
+	static void rampGains(float[] left, float[] right, int offset, 
+			int frames, float pan0, float pan1, int rampFrames) {
+		final float l0 = leftGain(pan0), r0 = rightGain(pan0);
+		final float l1 = leftGain(pan1), r1 = rightGain(pan1);
+		final float dl = (l1 - l0) / rampFrames;
+		final float dr = (r1 - r0) / rampFrames;
+		
+		float gl = l0, gr = r0;
+		final int rampEnd = offset + rampFrames;
+		for (int i = offset; i < rampEnd; i++) {
+			gl += dl;
+			gr += dr;
+			left[i] *= gl;
+			right[i] *= gr;
+		}
+		Kernels.INSTANCE.scale(left, rampEnd, frames - rampFrames, l1);
+		Kernels.INSTANCE.scale(right, rampEnd, frames - rampFrames, r1);
+	}
+	
+	/*
+	 * Passes both channels through their delay lines. The delays ramp 
+	 * from those for pan0 to those for pan1 over rampFrames.
+	 */
+	void delay(float[] left, float[] right, int offset, int frames, 
+			float pan0, float pan1, int rampFrames) {
+		// A source on the left delays the right channel, and vice versa.
+		float delayL = Math.max(0, pan0) * maxDelayFrames;
+		float delayR = Math.max(0, -pan0) * maxDelayFrames;
+		final float endL = Math.max(0, pan1) * maxDelayFrames;
+		final float endR = Math.max(0, -pan1) * maxDelayFrames;
+		final float incrL = rampFrames > 0 ? (endL - delayL) / rampFrames : 0;
+		final float incrR = rampFrames > 0 ? (endR - delayR) / rampFrames : 0;
+		
+		for (int n = 0; n < frames; n++) {
+			if (n < rampFrames) {
+				delayL += incrL;
+				delayR += incrR;
+			} else {
+				delayL = endL;
+				delayR = endR;
+			}
+			final int i = offset + n;
+			ringL[write] = left[i];
+			ringR[write] = right[i];
+			left[i] = tap(ringL, delayL);
+			right[i] = tap(ringR, delayR);
+			write = (write + 1) & RING_MASK;
+		}
+	}
+	
+	/*
+	 * Writes a run into the delay lines without reading them back, as 
+	 * delay() does at a centred pan, so that the lines stay current 
+	 * while that pass is skipped. Only the last RING_SIZE frames can 
+	 * ever be read, so only those are copied.
+	 */
+	void feed(float[] left, float[] right, int offset, int frames) {
+		final int skip = Math.max(0, frames - RING_SIZE);
+		write = (write + skip) & RING_MASK;
+		for (int i = offset + skip, end = offset + frames; i < end; i++) {
+			ringL[write] = left[i];
+			ringR[write] = right[i];
+			write = (write + 1) & RING_MASK;
+		}
+	}
+	
+	private float tap(float[] ring, float delay) {
+		final int whole = (int)delay;
+		final float frac = delay - whole;
+		final float a = ring[(write - whole) & RING_MASK];
+		final float b = ring[(write - whole - 1) & RING_MASK];
+		return a + (b - a) * frac;
+	}
+	
+	void reset() {
+		Arrays.fill(ringL, 0);
+		Arrays.fill(ringR, 0);
+		write = 0;
+	}
+}
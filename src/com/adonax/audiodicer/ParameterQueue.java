@@ -0,0 +1,159 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Carries parameter changes from a control thread to the audio thread
+ * without locks. It is a single-producer/single-consumer ring: one 
+ * control thread may offer, and the render thread drains. Slots are 
+ * preallocated, so neither side allocates.
+ * 
+ * Each command can be timestamped with a frame offset. When the render
+ * thread drains the ring at the start of a block, the offset is counted
+ * from the first frame of that block. Drained commands wait, in order 
+ * of their due frame, until render() reaches them. Commands due on the
+ * same frame are applied in the order they were offered.
+ */
+final class ParameterQueue {
+
+	private final int capacity;
+	private final int mask;
+	
+	// The ring. Slots between head and tail belong to the consumer.
+	private final int[] commands;
+	private final double[] values;
+	private final int[] offsets;
+	private final Object[] payloads;
+	private final AtomicLong head = new AtomicLong(); // next to read
+	private final AtomicLong tail = new AtomicLong(); // next to write
+	
+	// Drained commands, sorted by due frame. Consumer only.
+	private final int[] dueCommands;
+	private final double[] dueValues;
+	private final Object[] duePayloads;
+	private final long[] dueFrames;
+	private int dueCount;
+	
+	ParameterQueue(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " 
+					+ capacity);
+		}
+		this.capacity = capacity;
+		mask = capacity - 1;
+		commands = new int[capacity];
+		values = new double[capacity];
+		offsets = new int[capacity];
+		payloads = new Object[capacity];
+		dueCommands = new int[capacity];
+		dueValues = new double[capacity];
+		duePayloads = new Object[capacity];
+		dueFrames = new long[capacity];
+	}
+	
+	//////////////////// Producer ///////////////////
+	/*
+	 * Returns false, dropping the command, if the ring is full.
+	 */
+	boolean offer(int command, double value, int frameOffset, Object payload) {
+		final long t = tail.get();
+		if (t - head.get() >= capacity) {
+			return false;
+		}
+		final int slot = (int)t & mask;
+		commands[slot] = command;
+		values[slot] = value;
+		offsets[slot] = Math.max(0, frameOffset);
+		payloads[slot] = payload;
+		tail.lazySet(t + 1); // publishes the slot
+		return true;
+	}
+	
+	//////////////////// Consumer ///////////////////
+	/*
+	 * Moves everything offered so far into the due list, timestamped 
+	 * from the given frame. 
+	 */
+	void drain(long blockStartFrame) {
+		long h = head.get();
+		final long t = tail.get();
+		while (h < t && dueCount < capacity) {
+			final int slot = (int)h & mask;
+			insertDue(commands[slot], values[slot], payloads[slot], 
+					blockStartFrame + offsets[slot]);
+			payloads[slot] = null;
+			h++;
+		}
+		head.lazySet(h); // hands the slots back to the producer
+	}
+	
+	private void insertDue(int command, double value, Object payload, 
+			long frame) {
+		int i = dueCount;
+		while (i > 0 && dueFrames[i - 1] > frame) {
+			dueCommands[i] = dueCommands[i - 1];
+			dueValues[i] = dueValues[i - 1];
+			duePayloads[i] = duePayloads[i - 1];
+			dueFrames[i] = dueFrames[i - 1];
+			i--;
+		}
+		dueCommands[i] = command;
+		dueValues[i] = value;
+		duePayloads[i] = payload;
+		dueFrames[i] = frame;
+		dueCount++;
+	}
+	
+	boolean hasDue() { return dueCount > 0; }
+	
+	// The following refer to the earliest due command.
+	long nextFrame() { return dueFrames[0]; }
+	int nextCommand() { return dueCommands[0]; }
+	double nextValue() { return dueValues[0]; }
+	Object nextPayload() { return duePayloads[0]; }
+	
+	void removeNext() {
+		dueCount--;
+		System.arraycopy(dueCommands, 1, dueCommands, 0, dueCount);
+		System.arraycopy(dueValues, 1, dueValues, 0, dueCount);
+		System.arraycopy(duePayloads, 1, duePayloads, 0, dueCount);
+		System.arraycopy(dueFrames, 1, dueFrames, 0, dueCount);
+		duePayloads[dueCount] = null;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+/*
+ * One-time sample rate conversion for cues, by polyphase windowed sinc.
+ * For a ratio of L output frames to M input frames (the rates divided 
+ * by their greatest common divisor), output frame n sits at input 
+ * position n * M / L, and uses the filter phase (n * M) % L. Each phase
+ * is a Kaiser-windowed sinc, low-passed at the lower of the two 
+ * Nyquist frequencies, with its taps normalized to unity gain.
+ * 
+ * Ratios needing more than MAX_PHASES phases (rates without a large 
+ * common divisor) round each position to the nearest of MAX_PHASES 
+ * phases, which leaves a timing error of at most 1/8192 of a frame. A
+ * position that rounds up to the next whole frame uses phase 0 there.
+ * 
+ * The cost is paid once per cue, at load, rather than as interpolation
+ * on every frame played.
+ */
+final class Resampler {
+	
+	private static final int MAX_PHASES = 4096;
+	private static final int ZERO_CROSSINGS = 16; // each side
+	private static final double ROLLOFF = 0.95;   // of Nyquist
+	private static final double KAISER_BETA = 8.6; // about 80dB
+	
+	private Resampler() {}
+	
+	static SampleStore resample(SampleStore src, float fromRate, float toRate) {
+		final long from = Math.round(fromRate);
+		final long to = Math.round(toRate);
+		if (from < 1 || to < 1) {
+			throw new IllegalArgumentException("Sample rates rejected: " 
+					+ fromRate + " to " + toRate);
+		}
+		final long g = gcd(from, to);
+		final long up = to / g;   // L
+		final long down = from / g; // M
+		
+		final double cutoff = ROLLOFF * Math.min(1.0, (double)up / down);
+		final int halfTaps = (int)Math.ceil(ZERO_CROSSINGS / cutoff);
+		final int phases = (int)Math.min(up, MAX_PHASES);
+		final float[][] table = buildTable(phases, halfTaps, cutoff);
+		
+		final int inFrames = src.frames;
+		final int outFrames = (int)((inFrames * up + down - 1) / down);
+		final float[][] out = new float[src.channels][outFrames];
+		final float[] in = new float[inFrames];
+		final int taps = 2 * halfTaps;
+		
+		for (int ch = 0; ch < src.channels; ch++) {
+			src.read(ch, 0, in, 0, inFrames);
+			final float[] dst = out[ch];
+			for (int n = 0; n < outFrames; n++) {
+				final long pos = n * down;
+				int i0 = (int)(pos / up);
+				int phase;
+				if (phases == up) {
+					phase = (int)(pos % up);
+				} else {
+					phase = (int)(((pos % up) * phases * 2 + up) / (2 * up));
+					if (phase == phases) {
+						phase = 0;
+						i0++;
+					}
+				}
+				final float[] h = table[phase];
+				
+				// Taps run from i0 - halfTaps + 1 to i0 + halfTaps, with 
+				// zeros beyond the ends of the cue.
+				final int first = i0 - halfTaps + 1;
+				final int jStart = Math.max(0, -first);
+				final int jEnd = Math.min(taps, inFrames - first);
+				float sum = 0;
+				for (int j = jStart; j < jEnd; j++) {
+					sum += h[j] * in[first + j];
+				}
+				dst[n] = sum;
+			}
+		}
+		return new SampleStore.Floats(out);
+	}
+	
+	/*
+	 * table[p][j] weights input frame i0 - halfTaps + 1 + j for an 
+	 * output falling p / phases of a frame past i0.
+	 */
+	private static float[][] buildTable(int phases, int halfTaps, 
+			double cutoff) {
+		final int taps = 2 * halfTaps;
+		final double i0Beta = bessel0(KAISER_BETA);
+		final float[][] table = new float[phases][taps];
+		final double[] h = new double[taps];
+		for (int p = 0; p < phases; p++) {
+			final double frac = (double)p / phases;
+			double sum = 0;
+			for (int j = 0; j < taps; j++) {
+				final double t = frac + halfTaps - 1 - j;
+				final double x = t / halfTaps;
+				final double window = Math.abs(x) >= 1 ? 0 
+						: bessel0(KAISER_BETA * Math.sqrt(1 - x * x)) / i0Beta;
+				h[j] = cutoff * sinc(cutoff * t) * window;
+				sum += h[j];
+			}
+			for (int j = 0; j < taps; j++) {
+				table[p][j] = (float)(h[j] / sum);
+			}
+		}
+		return table;
+	}
+	
+	private static double sinc(double x) {
+		if (x == 0) return 1;
+		final double px = Math.PI * x;
+		return Math.sin(px) / px;
+	}
+	
+	// Zeroth-order modified Bessel function of the first kind.
+	private static double bessel0(double x) {
+		double sum = 1, term = 1;
+		final double q = x * x / 4;
+		for (int k = 1; term > 1e-12 * sum; k++) {
+			term *= q / (k * k);
+			sum += term;
+		}
+		return sum;
+	}
+	
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/*
+ * The sample data behind a Cue: normalized signed pcm, read one sample
+ * at a time by channel and frame. Implementations differ only in how
+ * the samples are held, trading memory for the cost of scaling to 
+ * float as they are read. A store is never written after it is built.
+ */
+abstract class SampleStore {
+
+	final int frames;
+	final int channels;
+	
+	SampleStore(int frames, int channels) {
+		this.frames = frames;
+		this.channels = channels;
+	}
+	
+	abstract float get(int channel, int frame);
+	
+	/*
+	 * Copies a run of one channel's samples, unscaled beyond the usual
+	 * normalization. 
+	 */
+	void read(int channel, int frame, float[] dst, int offset, int frames) {
+		for (int i = 0; i < frames; i++) {
+			dst[offset + i] = get(channel, frame + i);
+		}
+	}
+	
+	abstract Cue.Storage getStorage();
+	
+	abstract long getSizeInBytes();
+	
+	/*
+	 * Copies any store into the requested representation. Conversion to
+	 * 16-bit rounds and saturates; a 16-bit source survives the round 
+	 * trip unchanged.
+	 */
+	static SampleStore convert(SampleStore src, Cue.Storage storage) {
+		if (src.getStorage() == storage) return src;
+		
+		final Builder builder = builder(storage, src.channels, src.frames);
+		final float[][] block = new float[src.channels]
+				[Math.min(Builder.BLOCK_FRAMES, src.frames)];
+		for (int frame = 0; frame < src.frames; frame += Builder.BLOCK_FRAMES) {
+			final int count = Math.min(Builder.BLOCK_FRAMES, src.frames - frame);
+			for (int c = 0; c < src.channels; c++) {
+				src.read(c, frame, block[c], 0, count);
+			}
+			builder.put(block, frame, count);
+		}
+		return builder.build();
+	}
+	
+	/*
+	 * Fills a new store in the given representation, a block of frames
+	 * at a time, so that loaders and conversions need hold no more than
+	 * a block of float samples beside it.
+	 */
+	static Builder builder(Cue.Storage storage, int channels, int frames) {
+		switch (storage) {
+		case FLOAT: {
+			final float[][] data = new float[channels][frames];
+			return new Builder() {
+				@Override
+				void put(float[][] src, int frame, int count) {
+					for (int c = 0; c < channels; c++) {
+						System.arraycopy(src[c], 0, data[c], frame, count);
+					}
+				}
+				@Override
+				SampleStore build() { return new Floats(data); }
+			};
+		}
+		case SHORT_PLANAR: {
+			final short[][] data = new short[channels][frames];
+			return new Builder() {
+				@Override
+				void put(float[][] src, int frame, int count) {
+					for (int c = 0; c < channels; c++) {
+						for (int i = 0; i < count; i++) {
+							data[c][frame + i] = toShort(src[c][i]);
+						}
+					}
+				}
+				@Override
+				SampleStore build() { return new Shorts(data); }
+			};
+		}
+		case SHORT_INTERLEAVED:
+		case SHORT_OFF_HEAP: {
+			final int samples = frames * channels;
+			final ShortBuffer data = storage == Cue.Storage.SHORT_OFF_HEAP
+					? ByteBuffer.allocateDirect(samples * 2)
+							.order(ByteOrder.nativeOrder()).asShortBuffer()
+					: ShortBuffer.allocate(samples);
+			return new Builder() {
+				@Override
+				void put(float[][] src, int frame, int count) {
+					for (int i = 0, s = frame * channels; i < count; i++) {
+						for (int c = 0; c < channels; c++) {
+							data.put(s++, toShort(src[c][i]));
+						}
+					}
+				}
+				@Override
+				SampleStore build() {
+					return new InterleavedShorts(data, frames, channels, storage);
+				}
+			};
+		}
+		case FLOAT_OFF_HEAP: {
+			final FloatBuffer data = ByteBuffer.allocateDirect(frames * channels * 4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			return new Builder() {
+				@Override
+				void put(float[][] src, int frame, int count) {
+					for (int i = 0, s = frame * channels; i < count; i++) {
+						for (int c = 0; c < channels; c++) {
+							data.put(s++, src[c][i]);
+						}
+					}
+				}
+				@Override
+				SampleStore build() {
+					return new InterleavedFloats(data, frames, channels);
+				}
+			};
+		}
+		default:
+			throw new IllegalArgumentException("Unknown storage: " + storage);
+		}
+	}
+	
+	abstract static class Builder {
+		
+		static final int BLOCK_FRAMES = 4096;
+		
+		/*
+		 * Stores src[channel][0..count) as the given frames.
+		 */
+		abstract void put(float[][] src, int frame, int count);
+		
+		abstract SampleStore build();
+	}
+	
+	private static short toShort(float val) {
+		return (short)Math.max(-32768, Math.min(32767, Math.round(val * 32768)));
+	}
+	
+	/*
+	 * float[channel][frame], the default. 4 bytes per sample.
+	 */
+	static final class Floats extends SampleStore {
+		
+		final float[][] data;
+		
+		Floats(float[][] data) {
+			super(data[0].length, data.length);
+			this.data = data;
+		}
+
+		@Override
+		float get(int channel, int frame) {
+			return data[channel][frame];
+		}
+		
+		@Override
+		void read(int channel, int frame, float[] dst, int offset, int frames) {
+			System.arraycopy(data[channel], frame, dst, offset, frames);
+		}
+
+		@Override
+		Cue.Storage getStorage() { return Cue.Storage.FLOAT; }
+
+		@Override
+		long getSizeInBytes() { return 4L * frames * channels; }
+	}
+	
+	/*
+	 * short[channel][frame], on heap. 2 bytes per sample.
+	 */
+	static final class Shorts extends SampleStore {
+		
+		private static final float SCALE = 1 / 32768f;
+		final short[][] data;
+		
+		Shorts(short[][] data) {
+			super(data[0].length, data.length);
+			this.data = data;
+		}
+
+		@Override
+		float get(int channel, int frame) {
+			return data[channel][frame] * SCALE;
+		}
+		
+		@Override
+		void read(int channel, int frame, float[] dst, int offset, int frames) {
+			Kernels.INSTANCE.toFloats(data[channel], frame, frames, dst, offset, 
+					SCALE);
+		}
+		
+		@Override
+		Cue.Storage getStorage() { return Cue.Storage.SHORT_PLANAR; }
+
+		@Override
+		long getSizeInBytes() { return 2L * frames * channels; }
+	}
+	
+	/*
+	 * Interleaved frames in a ShortBuffer, which may be a heap buffer
+	 * or a view of a direct (off-heap) ByteBuffer. 2 bytes per sample.
+	 */
+	static final class InterleavedShorts extends SampleStore {
+		
+		private static final float SCALE = 1 / 32768f;
+		private final ShortBuffer data;
+		private final Cue.Storage storage;
+		
+		InterleavedShorts(ShortBuffer data, int frames, int channels, 
+				Cue.Storage storage) {
+			super(frames, channels);
+			this.data = data;
+			this.storage = storage;
+		}
+
+		@Override
+		float get(int channel, int frame) {
+			return data.get(frame * channels + channel) * SCALE;
+		}
+
+		@Override
+		Cue.Storage getStorage() { return storage; }
+		
+		@Override
+		long getSizeInBytes() { return 2L * frames * channels; }
+	}
+	
+	/*
+	 * Interleaved frames in a FloatBuffer view of a direct or mapped
+	 * ByteBuffer. 4 bytes per sample.
+	 */
+	static final class InterleavedFloats extends SampleStore {
+		
+		private final FloatBuffer data;
+		
+		InterleavedFloats(FloatBuffer data, int frames, int channels) {
+			super(frames, channels);
+			this.data = data;
+		}
+
+		@Override
+		float get(int channel, int frame) {
+			return data.get(frame * channels + channel);
+		}
+
+		@Override
+		Cue.Storage getStorage() { return Cue.Storage.FLOAT_OFF_HEAP; }
+		
+		@Override
+		long getSizeInBytes() { return 4L * frames * channels; }
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.SplittableRandom;
+
+/*
+ * A fixed set of slices cut from a cue, each sliceSize frames long, 
+ * with the fade-in already applied to its first overlap frames and 
+ * the fade-out to its last. At speed 1 a dicer can then play slices 
+ * by copying them out, and cross-fade two by adding one into the 
+ * other, with no interpolation or gain work. The gains are the ones 
+ * the cross-fade would apply, so a bank slice sounds exactly as the 
+ * same slice played from the cue in any interpolation mode but SINC.
+ * SINC filters even at speed 1; the bank holds the cue unfiltered.
+ * 
+ * Starts are drawn one per equal stretch of the playable range, so 
+ * the bank covers the whole cue. With a splice index, each start moves
+ * to the next splice candidate in its stretch, if there is one. All 
+ * slices share one array per channel.
+ */
+final class SliceBank {
+	
+	final int count;
+	final int sliceSize;
+	final int overlap;
+	final int channels;
+	final int[] starts;
+	final float[][] data; // [channel][slice * sliceSize + frame]
+	
+	private SliceBank(int count, int sliceSize, int overlap, int channels) {
+		this.count = count;
+		this.sliceSize = sliceSize;
+		this.overlap = overlap;
+		this.channels = channels;
+		final int length;
+		try {
+			length = Math.multiplyExact(count, sliceSize);
+		} catch (ArithmeticException e) {
+			throw new IllegalStateException("Slice bank of " + count 
+					+ " slices of " + sliceSize + " frames is too large for "
+					+ "one array per channel; lower the budget.", e);
+		}
+		starts = new int[count];
+		data = new float[channels][length];
+	}
+	
+	static long bytesPerSlice(int sliceSize, int channels) {
+		return (long)sliceSize * channels * Float.BYTES;
+	}
+	
+	/*
+	 * Cuts count slices from the samples, keeping padding frames clear 
+	 * of either end where the cue is long enough.
+	 */
+	static SliceBank build(SampleStore samples, int count, int sliceSize, 
+			int overlap, FadeTable fades, int padding, SpliceIndex index, 
+			SplittableRandom random) {
+		
+		final SliceBank bank = new SliceBank(count, sliceSize, overlap, 
+				samples.channels);
+		
+		// Frames start + 1 onward are played, as a cursor at start reads.
+		final int last = samples.frames - sliceSize - 2;
+		if (last < 0) {
+			throw new IllegalArgumentException(
+					"Slice size is longer than the cue: " + sliceSize);
+		}
+		int lo = padding, hi = last - padding;
+		if (hi <= lo) {
+			lo = 0;
+			hi = last;
+		}
+		final double stretch = (hi - lo) / (double)count;
+		
+		for (int s = 0; s < count; s++) {
+			final int from = lo + (int)(s * stretch);
+			final int to = lo + (int)((s + 1) * stretch);
+			int start = from + random.nextInt(Math.max(1, to - from));
+			if (index != null) {
+				final int candidate = index.atOrAfter(from);
+				if (candidate >= 0 && candidate <= to) {
+					start = candidate;
+				}
+			}
+			bank.starts[s] = start;
+			
+			final int base = s * sliceSize;
+			for (int ch = 0; ch < bank.channels; ch++) {
+				final float[] dst = bank.data[ch];
+				samples.read(ch, start + 1, dst, base, sliceSize);
+				final int tail = base + sliceSize - overlap;
+				for (int k = 0; k < overlap; k++) {
+					dst[base + k] *= fades.in[k];
+					dst[tail + k] *= fades.out[k];
+				}
+			}
+		}
+		return bank;
+	}
+	
+	long getSizeInBytes() {
+		return bytesPerSlice(sliceSize, channels) * count;
+	}
+}
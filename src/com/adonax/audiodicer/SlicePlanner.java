@@ -0,0 +1,211 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * Plans the start points of the next few slices ahead of time. The 
+ * render thread refills the plan at block boundaries, so the random 
+ * draws and range arithmetic are done outside the per-frame loops, and 
+ * the upcoming starts can be previewed.
+ * 
+ * Each start is drawn from the range allowed by the slice size and the
+ * highest speed in play, then shifted by the comb filter padding if it
+ * lands too close to where the previous slice will be when it fades
+ * out. For planned slices that position is predicted from the current 
+ * speed. When a slice is actually taken the padding rule is applied 
+ * again against the real position, so a speed ramp that spoils the 
+ * prediction cannot let a repeat through.
+ * 
+ * Given a SpliceIndex, starts are drawn from its candidates instead of
+ * uniformly, and the padding shift moves to the nearest candidate at 
+ * least the padding away. With too few candidates in range the planner
+ * falls back to uniform draws.
+ * 
+ * The plan is discarded whenever the limits it was drawn for change, 
+ * so the speed it is given should be a ceiling that holds steady over
+ * a ramp, not the speed of the moment. Render thread only, apart from
+ * getPreview().
+ * 
+ * The preview is copied into a preallocated array under the write 
+ * lock of a StampedLock. Readers take optimistic reads and retry if 
+ * a refill overlapped, so the render thread never waits or allocates.
+ */
+final class SlicePlanner {
+
+	private static final int MIN_CANDIDATES = 16;
+	
+	private final int capacity;
+	private final int[] draws; // unshifted random draws, in order
+	private final int[] starts; // the draws shifted against the predictions
+	private int head, count;
+	
+	// The limits the plan was drawn for.
+	private int audioFrames = -1, sliceSize, overlap, combFilterPadding;
+	private float maxSpeed;
+	private SpliceIndex index;
+	private int range, pad, advance;
+	private int candidates; // index entries below range, or 0 if not used
+	private int lastFadeOut; // predicted position of the last slice at its fade-out
+	
+	private final int[] preview;
+	private int previewCount;
+	private final StampedLock previewLock = new StampedLock();
+	
+	SlicePlanner(int capacity) {
+		this.capacity = capacity;
+		draws = new int[capacity];
+		starts = new int[capacity];
+		preview = new int[capacity];
+	}
+	
+	/*
+	 * Updates the limits, discarding the plan if they have changed. 
+	 * Cheap when nothing has changed.
+	 */
+	void configure(int audioFrames, int sliceSize, int overlap, 
+			float maxSpeed, int combFilterPadding, SpliceIndex index) {
+		if (audioFrames == this.audioFrames && sliceSize == this.sliceSize
+				&& overlap == this.overlap && maxSpeed == this.maxSpeed 
+				&& combFilterPadding == this.combFilterPadding 
+				&& index == this.index) {
+			return;
+		}
+		this.index = index;
+		this.audioFrames = audioFrames;
+		this.sliceSize = sliceSize;
+		this.overlap = overlap;
+		this.maxSpeed = maxSpeed;
+		this.combFilterPadding = combFilterPadding;
+		
+		// One frame is held back for the interpolation's look-ahead.
+		range = audioFrames - sliceSize - 1;
+		pad = combFilterPadding;
+		// Need to narrow the range when using faster speed.
+		if (maxSpeed > 1) {
+			range = (int)(range / maxSpeed);
+			pad = (int)(combFilterPadding / maxSpeed);
+		}
+		// Cue frames from a slice's start to the start of its fade-out.
+		advance = (int)((sliceSize - overlap) * maxSpeed);
+		
+		candidates = index == null ? 0 : index.countBelow(range);
+		if (candidates < MIN_CANDIDATES) candidates = 0;
+		clear();
+	}
+	
+	void clear() {
+		head = 0;
+		count = 0;
+	}
+	
+	/*
+	 * Tops the plan up to capacity. The fade-out position of the slice 
+	 * now playing is only needed when the plan is empty.
+	 */
+	void refill(SplittableRandom random, int currentFadeOut) {
+		if (count == capacity) return;
+		if (count == 0) {
+			lastFadeOut = currentFadeOut;
+		}
+		while (count < capacity) {
+			final int i = (head + count) % capacity;
+			draws[i] = draw(random);
+			starts[i] = shift(draws[i], lastFadeOut);
+			lastFadeOut = starts[i] + advance;
+			count++;
+		}
+		
+		final long stamp = previewLock.writeLock();
+		for (int k = 0; k < count; k++) {
+			preview[k] = starts[(head + k) % capacity];
+		}
+		previewCount = count;
+		previewLock.unlockWrite(stamp);
+	}
+	
+	/*
+	 * Takes the next planned start, checked against the actual position
+	 * of the outgoing stream. Draws one on the spot if the plan is empty.
+	 */
+	int next(SplittableRandom random, int currentIdx) {
+		if (count == 0) {
+			return shift(draw(random), currentIdx);
+		}
+		final int draw = draws[head];
+		head = (head + 1) % capacity;
+		count--;
+		return shift(draw, currentIdx);
+	}
+	
+	/*
+	 * The planned starts, soonest first, as of the last refill. Safe to
+	 * call from any thread.
+	 */
+	int[] getPreview() {
+		while (true) {
+			final long stamp = previewLock.tryOptimisticRead();
+			final int[] copy = Arrays.copyOf(preview, 
+					Math.min(previewCount, capacity));
+			if (previewLock.validate(stamp)) return copy;
+			Thread.onSpinWait();
+		}
+	}
+	
+	private int draw(SplittableRandom random) {
+		return candidates == 0 ? random.nextInt(range) 
+				: index.getPosition(random.nextInt(candidates));
+	}
+	
+	// Shift by the padding towards the middle of the range, so the 
+	// padded start stays within bounds.
+	private int shift(int start, int currentIdx) {
+		if (Math.abs(currentIdx - start) < pad) {
+			final boolean up = start < range / 2;
+			if (candidates > 0) {
+				final int candidate = up ? index.atOrAfter(start + pad) 
+						: index.atOrBefore(start - pad);
+				if (candidate >= 0 && candidate < range) return candidate;
+			}
+			return up ? start + pad : start - pad;
+		}
+		return start;
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.util.Arrays;
+
+/*
+ * Frames of a cue that make good slice starts, found by one pass over 
+ * the samples. The cue is cut into short blocks and the mean power of 
+ * each block (channels summed to mono) is measured. A block qualifies
+ * if it is steady, with its power and its neighbours' within a factor 
+ * of two of each other, so that it is not on an attack or a sudden 
+ * drop, and if it is no louder than twice the median block. The 
+ * candidate in each qualifying block is its first upward zero crossing.
+ * Blocks without one contribute nothing.
+ * 
+ * Candidates are kept in ascending order, at most one per block. A 
+ * start can be drawn from those below a limit in constant time.
+ */
+public final class SpliceIndex {
+	
+	static final int BLOCK_FRAMES = 256;
+	private static final double STEADY_RATIO = 2;
+	private static final double LOUD_RATIO = 2;
+	private static final double SILENCE = 1e-10;
+	
+	private final int[] positions;
+	
+	SpliceIndex(int[] positions) {
+		this.positions = positions;
+	}
+	
+	public int getCount() { return positions.length; }
+	public int getPosition(int index) { return positions[index]; }
+	
+	/*
+	 * The number of candidates before the given frame.
+	 */
+	int countBelow(int frame) {
+		int i = Arrays.binarySearch(positions, frame);
+		return i >= 0 ? i : -i - 1;
+	}
+	
+	/*
+	 * The first candidate at or after the frame, or -1.
+	 */
+	int atOrAfter(int frame) {
+		int i = countBelow(frame);
+		return i < positions.length ? positions[i] : -1;
+	}
+	
+	/*
+	 * The last candidate at or before the frame, or -1.
+	 */
+	int atOrBefore(int frame) {
+		int i = countBelow(frame + 1) - 1;
+		return i >= 0 ? positions[i] : -1;
+	}
+	
+	static SpliceIndex build(SampleStore samples) {
+		final int blocks = samples.frames / BLOCK_FRAMES;
+		if (blocks < 3) return new SpliceIndex(new int[0]);
+		
+		final double[] power = new double[blocks];
+		for (int b = 0; b < blocks; b++) {
+			double sum = 0;
+			for (int i = b * BLOCK_FRAMES, end = i + BLOCK_FRAMES; i < end; i++) {
+				double mono = mono(samples, i);
+				sum += mono * mono;
+			}
+			power[b] = sum / BLOCK_FRAMES;
+		}
+		
+		final double[] sorted = power.clone();
+		Arrays.sort(sorted);
+		final double loud = sorted[blocks / 2] * LOUD_RATIO + SILENCE;
+		
+		final int[] found = new int[blocks];
+		int count = 0;
+		for (int b = 1; b < blocks - 1; b++) {
+			final double lo = Math.min(power[b - 1], Math.min(power[b], power[b + 1]));
+			final double hi = Math.max(power[b - 1], Math.max(power[b], power[b + 1]));
+			if (power[b] > loud || hi > lo * STEADY_RATIO + SILENCE) continue;
+			
+			double prev = mono(samples, b * BLOCK_FRAMES - 1);
+			for (int i = b * BLOCK_FRAMES, end = i + BLOCK_FRAMES; i < end; i++) {
+				final double val = mono(samples, i);
+				if (prev < 0 && val >= 0) {
+					found[count++] = i;
+					break;
+				}
+				prev = val;
+			}
+		}
+		return new SpliceIndex(Arrays.copyOf(found, count));
+	}
+	
+	private static double mono(SampleStore samples, int frame) {
+		return samples.channels == 1 ? samples.get(0, frame) 
+				: samples.get(0, frame) + samples.get(1, frame);
+	}
+}
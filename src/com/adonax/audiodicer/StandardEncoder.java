@@ -0,0 +1,262 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+
+/*
+ * Stereo encoders for 16 and 24-bit signed PCM and 32-bit float, each 
+ * little or big-endian. Integer formats saturate at full scale rather 
+ * than wrapping around. Float output is written as is, without 
+ * clipping.
+ * 
+ * Samples are written through VarHandle views of the target byte[] or
+ * ByteBuffer, so there is no intermediate copy and no allocation.
+ */
+public enum StandardEncoder implements AudioEncoder {
+	
+	PCM16_LE(16, false, false), 
+	PCM16_BE(16, true, false), 
+	PCM24_LE(24, false, false), 
+	PCM24_BE(24, true, false), 
+	FLOAT32_LE(32, false, true), 
+	FLOAT32_BE(32, true, true);
+	
+	private static final VarHandle SHORT_LE = 
+			MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle SHORT_BE = 
+			MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle FLOAT_LE = 
+			MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle FLOAT_BE = 
+			MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle BUFFER_SHORT_LE = 
+			MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle BUFFER_SHORT_BE = 
+			MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle BUFFER_FLOAT_LE = 
+			MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle BUFFER_FLOAT_BE = 
+			MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+	
+	private static final int SCRATCH_FRAMES = 512;
+	private static final ThreadLocal<short[][]> SCRATCH_16 = 
+			ThreadLocal.withInitial(() -> new short[2][SCRATCH_FRAMES]);
+	
+	private final int bits;
+	private final boolean bigEndian;
+	private final boolean floatingPoint;
+	
+	StandardEncoder(int bits, boolean bigEndian, boolean floatingPoint) {
+		this.bits = bits;
+		this.bigEndian = bigEndian;
+		this.floatingPoint = floatingPoint;
+	}
+	
+	@Override
+	public int getBytesPerFrame() { return bits / 4; } // 2 channels
+	
+	@Override
+	public AudioFormat getAudioFormat(float sampleRate) {
+		return new AudioFormat(floatingPoint ? AudioFormat.Encoding.PCM_FLOAT 
+				: AudioFormat.Encoding.PCM_SIGNED, sampleRate, bits, 2, 
+				getBytesPerFrame(), sampleRate, bigEndian);
+	}
+	
+	@Override
+	public int encode(float[] left, float[] right, int offset, int frames,
+			byte[] dst, int dstOffset) {
+		final int end = offset + frames;
+		int pos = dstOffset;
+		
+		switch (this) {
+		case PCM16_LE:
+		case PCM16_BE:
+			pos = encode16(left, right, offset, frames, dst, pos);
+			break;
+		case FLOAT32_LE:
+			for (int i = offset; i < end; i++, pos += 8) {
+				FLOAT_LE.set(dst, pos, left[i]);
+				FLOAT_LE.set(dst, pos + 4, right[i]);
+			}
+			break;
+		case FLOAT32_BE:
+			for (int i = offset; i < end; i++, pos += 8) {
+				FLOAT_BE.set(dst, pos, left[i]);
+				FLOAT_BE.set(dst, pos + 4, right[i]);
+			}
+			break;
+		case PCM24_LE:
+		case PCM24_BE:
+			for (int i = offset; i < end; i++, pos += 6) {
+				put24(dst, pos, to24(left[i]), bigEndian);
+				put24(dst, pos + 3, to24(right[i]), bigEndian);
+			}
+			break;
+		}
+		return pos - dstOffset;
+	}
+	
+	@Override
+	public int encode(float[] left, float[] right, int offset, int frames,
+			ByteBuffer dst) {
+		if (dst.hasArray()) {
+			final int written = encode(left, right, offset, frames, 
+					dst.array(), dst.arrayOffset() + dst.position());
+			dst.position(dst.position() + written);
+			return written;
+		}
+		
+		final int end = offset + frames;
+		final int start = dst.position();
+		int pos = start;
+		
+		switch (this) {
+		case PCM16_LE:
+		case PCM16_BE:
+			pos = encode16(left, right, offset, frames, dst, pos);
+			break;
+		case FLOAT32_LE:
+			for (int i = offset; i < end; i++, pos += 8) {
+				BUFFER_FLOAT_LE.set(dst, pos, left[i]);
+				BUFFER_FLOAT_LE.set(dst, pos + 4, right[i]);
+			}
+			break;
+		case FLOAT32_BE:
+			for (int i = offset; i < end; i++, pos += 8) {
+				BUFFER_FLOAT_BE.set(dst, pos, left[i]);
+				BUFFER_FLOAT_BE.set(dst, pos + 4, right[i]);
+			}
+			break;
+		case PCM24_LE:
+		case PCM24_BE:
+			for (int i = offset; i < end; i++, pos += 6) {
+				put24(dst, pos, to24(left[i]), bigEndian);
+				put24(dst, pos + 3, to24(right[i]), bigEndian);
+			}
+			break;
+		}
+		dst.position(pos);
+		return pos - start;
+	}
+	
+	/*
+	 * 16-bit output is clipped and converted a chunk at a time into 
+	 * per-thread scratch by the Kernels, which may be vectorized, then 
+	 * interleaved into the target.
+	 */
+	private int encode16(float[] left, float[] right, int offset, 
+			int frames, byte[] dst, int pos) {
+		final short[][] scratch = SCRATCH_16.get();
+		for (int done = 0; done < frames; ) {
+			final int n = Math.min(frames - done, SCRATCH_FRAMES);
+			Kernels.INSTANCE.clip16(left, offset + done, n, scratch[0], 0);
+			Kernels.INSTANCE.clip16(right, offset + done, n, scratch[1], 0);
+			if (bigEndian) {
+				for (int k = 0; k < n; k++, pos += 4) {
+					SHORT_BE.set(dst, pos, scratch[0][k]);
+					SHORT_BE.set(dst, pos + 2, scratch[1][k]);
+				}
+			} else {
+				for (int k = 0; k < n; k++, pos += 4) {
+					SHORT_LE.set(dst, pos, scratch[0][k]);
+					SHORT_LE.set(dst, pos + 2, scratch[1][k]);
+				}
+			}
+			done += n;
+		}
+		return pos;
+	}
+	
+	private int encode16(float[] left, float[] right, int offset, 
+			int frames, ByteBuffer dst, int pos) {
+		final short[][] scratch = SCRATCH_16.get();
+		for (int done = 0; done < frames; ) {
+			final int n = Math.min(frames - done, SCRATCH_FRAMES);
+			Kernels.INSTANCE.clip16(left, offset + done, n, scratch[0], 0);
+			Kernels.INSTANCE.clip16(right, offset + done, n, scratch[1], 0);
+			if (bigEndian) {
+				for (int k = 0; k < n; k++, pos += 4) {
+					BUFFER_SHORT_BE.set(dst, pos, scratch[0][k]);
+					BUFFER_SHORT_BE.set(dst, pos + 2, scratch[1][k]);
+				}
+			} else {
+				for (int k = 0; k < n; k++, pos += 4) {
+					BUFFER_SHORT_LE.set(dst, pos, scratch[0][k]);
+					BUFFER_SHORT_LE.set(dst, pos + 2, scratch[1][k]);
+				}
+			}
+			done += n;
+		}
+		return pos;
+	}
+	
+	//////// UTILITIES ////////
+	
+	private static int to24(float val) {
+		return (int)(Math.max(-1, Math.min(1, val)) * 8388607);
+	}
+	
+	private static void put24(byte[] dst, int pos, int val, boolean bigEndian) {
+		if (bigEndian) {
+			dst[pos] = (byte)(val >> 16);
+			dst[pos + 1] = (byte)(val >> 8);
+			dst[pos + 2] = (byte)val;
+		} else {
+			dst[pos] = (byte)val;
+			dst[pos + 1] = (byte)(val >> 8);
+			dst[pos + 2] = (byte)(val >> 16);
+		}
+	}
+	
+	private static void put24(ByteBuffer dst, int pos, int val, boolean bigEndian) {
+		if (bigEndian) {
+			dst.put(pos, (byte)(val >> 16));
+			dst.put(pos + 1, (byte)(val >> 8));
+			dst.put(pos + 2, (byte)val);
+		} else {
+			dst.put(pos, (byte)val);
+			dst.put(pos + 1, (byte)(val >> 8));
+			dst.put(pos + 2, (byte)(val >> 16));
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/*
+ * Decodes .wav files by parsing the RIFF chunks directly, in a single 
+ * pass over the frames, straight into the internal normalized float 
+ * format. Files are
+ * memory-mapped; other URLs (e.g. resources in a jar) are read into
+ * memory first.
+ * 
+ * Supported: mono or stereo, 8-bit unsigned, 16/24/32-bit signed PCM 
+ * and 32-bit float, plain or WAVE_FORMAT_EXTENSIBLE. Chunks other than
+ * "fmt " and "data" are skipped.
+ */
+final class WavDecoder {
+
+	private static final int WAVE_FORMAT_PCM = 1;
+	private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+	
+	private WavDecoder() {}
+	
+	static Cue read(URL url) throws UnsupportedAudioFileException, IOException {
+		return read(url, Cue.Storage.FLOAT);
+	}
+	
+	static Cue read(URL url, Cue.Storage storage) 
+			throws UnsupportedAudioFileException, IOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return read(Paths.get(url.toURI()), storage);
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// not a plain file path after all, read it as a stream
+			}
+		}
+		try (InputStream in = url.openStream()) {
+			return decode(ByteBuffer.wrap(in.readAllBytes()), storage);
+		}
+	}
+	
+	static Cue read(Path path) throws UnsupportedAudioFileException, IOException {
+		return read(path, Cue.Storage.FLOAT);
+	}
+	
+	static Cue read(Path path, Cue.Storage storage) 
+			throws UnsupportedAudioFileException, IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+					channel.size()), storage);
+		}
+	}
+	
+	static Cue decode(ByteBuffer buffer) throws UnsupportedAudioFileException {
+		return decode(buffer, Cue.Storage.FLOAT);
+	}
+	
+	/*
+	 * Decodes into the given storage. For storages other than FLOAT the
+	 * frames are decoded a block at a time and stored as they go, so no
+	 * float copy of the whole cue is made.
+	 */
+	static Cue decode(ByteBuffer buffer, Cue.Storage storage) 
+			throws UnsupportedAudioFileException {
+		buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (buffer.remaining() < 12 || buffer.getInt(0) != chunkId("RIFF") 
+				|| buffer.getInt(8) != chunkId("WAVE")) {
+			throw new UnsupportedAudioFileException("Not a RIFF/WAVE file.");
+		}
+		
+		int format = -1, channels = 0, bitsPerSample = 0, blockAlign = 0;
+		float sampleRate = 0;
+		int dataPos = -1, dataSize = 0;
+		
+		int pos = 12;
+		while (pos + 8 <= buffer.limit()) {
+			final int id = buffer.getInt(pos);
+			final long size = buffer.getInt(pos + 4) & 0xffffffffL;
+			final int body = pos + 8;
+			
+			if (id == chunkId("fmt ")) {
+				if (size < 16) {
+					throw new UnsupportedAudioFileException("Short fmt chunk.");
+				}
+				format = buffer.getShort(body) & 0xffff;
+				channels = buffer.getShort(body + 2) & 0xffff;
+				sampleRate = buffer.getInt(body + 4);
+				blockAlign = buffer.getShort(body + 12) & 0xffff;
+				bitsPerSample = buffer.getShort(body + 14) & 0xffff;
+				if (format == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+					// the sub-format GUID starts with the actual format tag
+					format = buffer.getShort(body + 24) & 0xffff;
+				}
+			} else if (id == chunkId("data")) {
+				dataPos = body;
+				// Streamed files may leave the size unset or too large.
+				dataSize = (int)Math.min(size, buffer.limit() - body);
+				break;
+			}
+			// chunks are padded to an even length
+			pos = (int)Math.min(body + size + (size & 1), Integer.MAX_VALUE);
+		}
+		
+		if (format < 0 || dataPos < 0) {
+			throw new UnsupportedAudioFileException("Missing fmt or data chunk.");
+		}
+		if (channels < 1 || channels > 2) {
+			throw new UnsupportedAudioFileException("Audio file has an "
+					+ "unsupported number of channels:" + channels);
+		}
+		if (blockAlign == 0 || blockAlign != channels * ((bitsPerSample + 7) / 8)) {
+			throw new UnsupportedAudioFileException("Inconsistent block "
+					+ "alignment: " + blockAlign);
+		}
+		
+		final int frames = dataSize / blockAlign;
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataPos).limit(dataPos + frames * blockAlign);
+		data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (storage == Cue.Storage.FLOAT) {
+			final float[][] pcm = new float[channels][frames];
+			decodeFrames(data, format, bitsPerSample, channels, 0, frames, pcm);
+			return new Cue(pcm, sampleRate);
+		}
+		
+		final SampleStore.Builder builder = SampleStore.builder(storage, 
+				channels, frames);
+		final int blockFrames = SampleStore.Builder.BLOCK_FRAMES;
+		final float[][] block = new float[channels][Math.min(blockFrames, frames)];
+		for (int frame = 0; frame < frames; frame += blockFrames) {
+			final int count = Math.min(blockFrames, frames - frame);
+			decodeFrames(data, format, bitsPerSample, channels, frame, count, 
+					block);
+			builder.put(block, frame, count);
+		}
+		return new Cue(builder.build(), sampleRate);
+	}
+	
+	/*
+	 * Decodes the given run of frames, all channels at once, into
+	 * dst[channel][frame - first]. Each sample is read once, in file 
+	 * order.
+	 */
+	private static void decodeFrames(ByteBuffer data, int format, 
+			int bitsPerSample, int channels, int first, int count, 
+			float[][] dst) throws UnsupportedAudioFileException {
+		int s = first * channels;
+		
+		if (format == WAVE_FORMAT_PCM) {
+			switch (bitsPerSample) {
+			case 8:
+				for (int f = 0; f < count; f++) {
+					for (int c = 0; c < channels; c++, s++) {
+						dst[c][f] = ((data.get(s) & 0xff) - 128) / 128f;
+					}
+				}
+				break;
+			case 16:
+				final ShortBuffer shorts = data.asShortBuffer();
+				for (int f = 0; f < count; f++) {
+					for (int c = 0; c < channels; c++, s++) {
+						dst[c][f] = shorts.get(s) / 32768f;
+					}
+				}
+				break;
+			case 24:
+				for (int f = 0; f < count; f++) {
+					for (int c = 0; c < channels; c++, s++) {
+						dst[c][f] = get24(data, s * 3) / 8388608f;
+					}
+				}
+				break;
+			case 32:
+				final IntBuffer ints = data.asIntBuffer();
+				for (int f = 0; f < count; f++) {
+					for (int c = 0; c < channels; c++, s++) {
+						dst[c][f] = ints.get(s) / 2147483648f;
+					}
+				}
+				break;
+			default:
+				throw new UnsupportedAudioFileException("Unsupported PCM "
+						+ "bit depth: " + bitsPerSample);
+			}
+		} else if (format == WAVE_FORMAT_IEEE_FLOAT && bitsPerSample == 32) {
+			final FloatBuffer floats = data.asFloatBuffer();
+			for (int f = 0; f < count; f++) {
+				for (int c = 0; c < channels; c++, s++) {
+					dst[c][f] = floats.get(s);
+				}
+			}
+		} else {
+			throw new UnsupportedAudioFileException("Unsupported encoding: format "
+					+ format + ", " + bitsPerSample + " bits.");
+		}
+	}
+	
+	private static int get24(ByteBuffer data, int pos) {
+		return (data.get(pos) & 0xff) 
+				| ((data.get(pos + 1) & 0xff) << 8) 
+				| (data.get(pos + 2) << 16);
+	}
+	
+	private static int chunkId(String id) {
+		return (id.charAt(0)) | (id.charAt(1) << 8) 
+				| (id.charAt(2) << 16) | (id.charAt(3) << 24);
+	}
+}
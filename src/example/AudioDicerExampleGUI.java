@@ -153,7 +153,11 @@ final class AudioDicerGUI_wSliders extends JFrame {
 				val = val / 25; // 0:4
 				val = Math.pow(2, val); // 1:16
 				val = val / 4; // 0.25:4
-				demoPlayer_adv.slicedAudioStreamer.setSpeed(val);
+				try {
+					demoPlayer_adv.slicedAudioStreamer.setSpeed(val);
+				} catch (IllegalArgumentException arg0) {
+					// too fast for the slice size: keep the last speed
+				}
 				
 			}});
 		
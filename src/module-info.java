@@ -1,3 +1,7 @@
 module audiodicer {
-	requires java.desktop;
-}
\ No newline at end of file
+	requires transitive java.desktop;
+	requires transitive java.management;
+	requires static jdk.jfr;
+	
+	exports com.adonax.audiodicer;
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Parameter;
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class AudioDicerTest {
+
+	/*
+	 * At 20000-frame slices, two seconds of cue leave room for speeds 
+	 * below about 1.95. A speed past that is rejected the same way, 
+	 * and counted, whether set or automated.
+	 */
+	@Test
+	void rejectsSpeedsTheCueIsTooShortFor() {
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(new float[44100 * 2], Tracks.MONO));
+		dicer.setSliceSize(20000);
+		
+		assertTrue(dicer.setSpeed(1.5, 0));
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setSpeed(2.5, 0));
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.automate(Parameter.SPEED, 
+						Automation.ramp(2.5, 1, Automation.Curve.LINEAR), 0));
+		assertEquals(2, dicer.getMetrics().getRejectedSpeedChanges());
+		
+		assertTrue(dicer.automate(Parameter.SPEED, 
+				Automation.ramp(1.8, 1, Automation.Curve.LINEAR), 0));
+	}
+}
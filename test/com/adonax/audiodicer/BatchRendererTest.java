@@ -0,0 +1,131 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class BatchRendererTest {
+
+	private static AudioDicer prototype() {
+		float[] pcm = new float[44100 * 2];
+		for (int i = 0; i < pcm.length; i++) {
+			pcm[i] = (float)(0.4 * Math.sin(2 * Math.PI * 180 * i / 44100)
+					+ 0.1 * Math.sin(2 * Math.PI * 2711 * i / 44100));
+		}
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(pcm, Tracks.MONO));
+		dicer.setSliceSize(6000);
+		dicer.setOverlap(1000);
+		dicer.setCrossFadeMode(AudioDicer.CrossFadeMode.SINE);
+		dicer.setSpeed(1.3);
+		dicer.setVolume(0.7);
+		return dicer;
+	}
+	
+	private static float[][] render(long seed, int threads, int frames) {
+		BatchRenderer batch = new BatchRenderer(prototype(), seed);
+		batch.setChunkFrames(20000);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			batch.setPool(pool);
+			float[][] out = new float[2][frames];
+			batch.render(out[0], out[1], 0, frames);
+			return out;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	void outputDoesNotDependOnPoolSize() {
+		final int frames = 44100 * 3 + 17;
+		float[][] one = render(42, 1, frames);
+		for (int threads : new int[] {2, 3, 8}) {
+			float[][] many = render(42, threads, frames);
+			assertArrayEquals(one[0], many[0], threads + " threads, left");
+			assertArrayEquals(one[1], many[1], threads + " threads, right");
+		}
+	}
+	
+	@Test
+	void seedChangesOutput() {
+		final int frames = 44100;
+		assertFalse(Arrays.equals(render(42, 2, frames)[0], 
+				render(43, 2, frames)[0]));
+	}
+	
+	@Test
+	void prototypeChangesDuringBatchDoNotReachIt() {
+		final int frames = 44100 * 2;
+		float[][] expected = render(42, 2, frames);
+		
+		final AudioDicer prototype = prototype();
+		BatchRenderer batch = new BatchRenderer(prototype, 42);
+		batch.setChunkFrames(20000);
+		// Changes the prototype once the first chunk has been handed out.
+		ForkJoinPool pool = new ForkJoinPool(2) {
+			int submitted;
+			@Override
+			public <T> ForkJoinTask<T> submit(Callable<T> task) {
+				if (submitted++ == 1) {
+					prototype.setVolume(0.1);
+					prototype.setSliceSize(3000);
+				}
+				return super.submit(task);
+			}
+		};
+		try {
+			batch.setPool(pool);
+			float[][] out = new float[2][frames];
+			batch.render(out[0], out[1], 0, frames);
+			assertArrayEquals(expected[0], out[0], "left");
+			assertArrayEquals(expected[1], out[1], "right");
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class CueFileTest {
+
+	@TempDir
+	Path dir;
+	
+	// A stereo tone, different on each side, for the splice index to find.
+	private static Cue tone(int frames) {
+		float[] pcm = new float[frames * 2];
+		for (int i = 0; i < frames; i++) {
+			pcm[2 * i] = (float)(0.3 * Math.sin(2 * Math.PI * 220 * i / 44100));
+			pcm[2 * i + 1] = (float)(0.2 * Math.sin(2 * Math.PI * 330 * i / 44100));
+		}
+		return Cue.fromPCM(pcm, Tracks.STEREO, 48000);
+	}
+	
+	private static void assertSameCue(Cue expected, Cue actual) {
+		assertEquals(expected.getChannels(), actual.getChannels());
+		assertEquals(expected.getFrameCount(), actual.getFrameCount());
+		assertEquals(expected.getSampleRate(), actual.getSampleRate());
+		for (int c = 0; c < expected.getChannels(); c++) {
+			for (int i = 0; i < expected.getFrameCount(); i++) {
+				assertEquals(expected.samples.get(c, i), actual.samples.get(c, i), 
+						"channel " + c + ", frame " + i);
+			}
+		}
+		SpliceIndex a = expected.getSpliceIndex(), b = actual.getSpliceIndex();
+		assertEquals(a.getCount(), b.getCount());
+		for (int k = 0; k < a.getCount(); k++) {
+			assertEquals(a.getPosition(k), b.getPosition(k));
+		}
+	}
+	
+	@Test
+	void floatRoundTrip() throws IOException {
+		Cue cue = tone(20000);
+		assertTrue(cue.getSpliceIndex().getCount() > 0);
+		Path file = dir.resolve("tone.cue");
+		cue.writeCueFile(file);
+		
+		Cue mapped = Cue.fromCueFile(file);
+		assertEquals(Cue.Storage.FLOAT_OFF_HEAP, mapped.getStorage());
+		assertSameCue(cue, mapped);
+	}
+	
+	@Test
+	void shortRoundTrip() throws IOException {
+		Cue cue = tone(20000).withStorage(Cue.Storage.SHORT_PLANAR);
+		Path file = dir.resolve("tone16.cue");
+		cue.writeCueFile(file);
+		
+		Cue mapped = Cue.fromCueFile(file);
+		assertEquals(Cue.Storage.SHORT_OFF_HEAP, mapped.getStorage());
+		assertSameCue(cue, mapped);
+	}
+	
+	@Test
+	void mappedCueRendersAsTheOriginal() throws IOException {
+		Cue cue = tone(20000);
+		Path file = dir.resolve("render.cue");
+		cue.writeCueFile(file);
+		float[][] a = render(cue), b = render(Cue.fromCueFile(file));
+		for (int c = 0; c < 2; c++) {
+			for (int i = 0; i < a[c].length; i++) {
+				assertEquals(a[c][i], b[c][i], "channel " + c + ", frame " + i);
+			}
+		}
+	}
+	
+	private static float[][] render(Cue cue) {
+		AudioDicer dicer = new AudioDicer();
+		dicer.setOutputSampleRate(cue.getSampleRate());
+		dicer.setCue(cue);
+		dicer.setSliceSize(3000);
+		dicer.setOverlap(500);
+		dicer.setSeed(7);
+		dicer.setVolume(1);
+		dicer.start();
+		float[][] out = new float[2][10000];
+		dicer.render(out[0], out[1], 0, out[0].length);
+		return out;
+	}
+	
+	/*
+	 * An empty index is stored and loaded as such. The tone has splice
+	 * candidates, so an index rebuilt on load would not be empty. With
+	 * no index stored at all, it is rebuilt.
+	 */
+	@Test
+	void emptyIndexIsKept() throws IOException {
+		Cue tone = tone(20000);
+		Cue cue = new Cue(tone.samples, tone.getSampleRate(), 
+				new SpliceIndex(new int[0]));
+		Path file = dir.resolve("empty-index.cue");
+		cue.writeCueFile(file);
+		
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		assertTrue(header.getLong(32) >= header.getLong(24));
+		assertEquals(0, header.getInt(40));
+		assertEquals(0, Cue.fromCueFile(file).getSpliceIndex().getCount());
+		
+		patchLong(file, 32, 0);
+		assertEquals(tone.getSpliceIndex().getCount(), 
+				Cue.fromCueFile(file).getSpliceIndex().getCount());
+	}
+	
+	@Test
+	void rejectsBadMagic() throws IOException {
+		Path file = written();
+		patchInt(file, 0, 0x46464952); // "RIFF"
+		IOException e = assertThrows(IOException.class, () -> Cue.fromCueFile(file));
+		assertTrue(e.getMessage().startsWith("Not a cue file"));
+	}
+	
+	@Test
+	void rejectsOtherVersion() throws IOException {
+		Path file = written();
+		patchInt(file, 4, 2);
+		IOException e = assertThrows(IOException.class, () -> Cue.fromCueFile(file));
+		assertTrue(e.getMessage().startsWith("Unsupported cue file version 2"));
+	}
+	
+	@Test
+	void rejectsCorruptHeader() throws IOException {
+		Path file = written();
+		patchInt(file, 8, 3); // channels
+		assertThrows(IOException.class, () -> Cue.fromCueFile(file));
+	}
+	
+	@Test
+	void rejectsShortAndTruncatedFiles() throws IOException {
+		Path shortFile = dir.resolve("short.cue");
+		Files.write(shortFile, new byte[10]);
+		assertThrows(IOException.class, () -> Cue.fromCueFile(shortFile));
+		
+		Path file = written();
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+		IOException e = assertThrows(IOException.class, () -> Cue.fromCueFile(file));
+		assertTrue(e.getMessage().startsWith("Truncated cue file"));
+	}
+	
+	private Path written() throws IOException {
+		Path file = dir.resolve("patched.cue");
+		tone(5000).writeCueFile(file);
+		return file;
+	}
+	
+	private static void patchLong(Path file, int offset, long value) 
+			throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(offset, value);
+		Files.write(file, bytes);
+	}
+	
+	private static void patchInt(Path file, int offset, int value) 
+			throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		Files.write(file, bytes);
+	}
+}
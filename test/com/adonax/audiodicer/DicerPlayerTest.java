@@ -0,0 +1,207 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Runs the player headless, against the discarding and WAV file sinks.
+ */
+class DicerPlayerTest {
+
+	private static final float RATE = 44100;
+	private static final int BLOCK = 256;
+	
+	@TempDir
+	Path dir;
+	
+	/*
+	 * A ramp, different on each side, so written audio can be checked
+	 * frame by frame. Stops after the given number of blocks.
+	 */
+	private static final class Ramp implements RenderSource {
+		final int blocks;
+		volatile int rendered;
+		
+		Ramp(int blocks) {
+			this.blocks = blocks;
+		}
+		
+		@Override
+		public int render(float[] left, float[] right, int offset, int frames) {
+			if (rendered == blocks) return -1;
+			for (int n = 0; n < frames; n++) {
+				left[offset + n] = value(rendered * frames + n);
+				right[offset + n] = -value(rendered * frames + n);
+			}
+			rendered++;
+			return frames;
+		}
+		
+		static float value(int frame) {
+			return (frame % 1000) / 1000f;
+		}
+	}
+	
+	private static void awaitTrue(BooleanSupplier condition) {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "timed out");
+			LockSupport.parkNanos(1_000_000);
+		}
+	}
+	
+	@Test
+	void startsAndStops() throws Exception {
+		DicerPlayer player = new DicerPlayer(new Ramp(Integer.MAX_VALUE), 
+				AudioSink.discard(true), RATE);
+		player.setBlockFrames(BLOCK);
+		player.start();
+		assertTrue(player.isPlaying());
+		awaitTrue(() -> player.getBlocksPlayed() >= 10);
+		
+		player.stop();
+		assertFalse(player.isPlaying());
+		assertNull(player.getFailure());
+		final long played = player.getBlocksPlayed();
+		LockSupport.parkNanos(20_000_000);
+		assertEquals(played, player.getBlocksPlayed());
+		
+		// And again, from a fresh ring.
+		player.start();
+		assertTrue(player.isPlaying());
+		awaitTrue(() -> player.getBlocksPlayed() >= 1);
+		player.stop();
+		assertFalse(player.isPlaying());
+	}
+	
+	/*
+	 * Against a sink that does not keep pace, every block the source 
+	 * renders is written, in order, and the player stops by itself 
+	 * once the source stops.
+	 */
+	@Test
+	void playsOutToAFile() throws Exception {
+		Path file = dir.resolve("played.wav");
+		Ramp source = new Ramp(50);
+		DicerPlayer player = new DicerPlayer(source, AudioSink.file(file), RATE);
+		player.setEncoder(StandardEncoder.FLOAT32_LE);
+		player.setBlockFrames(BLOCK);
+		player.setRenderAhead(4, 4);
+		player.start();
+		awaitTrue(() -> !player.isPlaying());
+		player.stop();
+		
+		assertNull(player.getFailure());
+		assertEquals(50, player.getBlocksPlayed());
+		assertEquals(0, player.getUnderruns());
+		Cue cue = WavDecoder.read(file);
+		assertEquals(2, cue.getChannels());
+		assertEquals(50 * BLOCK, cue.getFrameCount());
+		for (int i = 0; i < cue.getFrameCount(); i++) {
+			assertEquals(Ramp.value(i), cue.samples.get(0, i), "frame " + i);
+			assertEquals(-Ramp.value(i), cue.samples.get(1, i), "frame " + i);
+		}
+	}
+	
+	/*
+	 * A source that throws stops the player, and the exception is kept.
+	 */
+	@Test
+	void keepsTheSourcesFailure() throws Exception {
+		final RuntimeException thrown = new RuntimeException("render failed");
+		Ramp ramp = new Ramp(Integer.MAX_VALUE);
+		RenderSource source = (left, right, offset, frames) -> {
+			if (ramp.rendered == 20) throw thrown;
+			return ramp.render(left, right, offset, frames);
+		};
+		DicerPlayer player = new DicerPlayer(source, AudioSink.discard(true), RATE);
+		player.setBlockFrames(BLOCK);
+		player.start();
+		awaitTrue(() -> !player.isPlaying());
+		
+		assertSame(thrown, player.getFailure());
+		player.stop();
+		assertFalse(player.isPlaying());
+		assertSame(thrown, player.getFailure());
+	}
+	
+	/*
+	 * A render that stalls for longer than the render-ahead covers 
+	 * forces underruns against a paced sink, and each raises the 
+	 * render-ahead by a block, up to the maximum.
+	 */
+	@Test
+	void growsRenderAheadAfterUnderruns() throws Exception {
+		Ramp ramp = new Ramp(Integer.MAX_VALUE);
+		RenderSource source = (left, right, offset, frames) -> {
+			if (ramp.rendered == 20) {
+				// About twenty blocks' worth. The writer's unpark() can 
+				// cut a single park short.
+				final long until = System.nanoTime() + 120_000_000;
+				while (System.nanoTime() < until) {
+					LockSupport.parkNanos(until - System.nanoTime());
+				}
+			}
+			return ramp.render(left, right, offset, frames);
+		};
+		DicerPlayer player = new DicerPlayer(source, AudioSink.discard(true), RATE);
+		player.setBlockFrames(BLOCK);
+		player.setRenderAhead(1, 6);
+		player.start();
+		assertEquals(1, player.getRenderAhead());
+		awaitTrue(() -> ramp.rendered > 40);
+		player.stop();
+		
+		assertNull(player.getFailure());
+		assertTrue(player.getUnderruns() >= 5, "underruns: " + player.getUnderruns());
+		assertEquals(6, player.getMaxRenderAhead());
+		assertEquals(6, player.getRenderAhead());
+	}
+}
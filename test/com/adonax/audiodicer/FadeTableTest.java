@@ -0,0 +1,138 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class FadeTableTest {
+
+	private static final int OVERLAP = 1000;
+	
+	/*
+	 * The SINE table must hold what the per-sample Math.sin code 
+	 * computed on each frame of the fade.
+	 */
+	@Test
+	void sineMatchesPerSampleGains() {
+		FadeTable table = FadeTable.get(CrossFadeMode.SINE, OVERLAP);
+		for (int k = 0; k < OVERLAP; k++) {
+			double normal = (k + 1) / (double)OVERLAP;
+			assertEquals((float)Math.sin(Math.PI / 2 * normal), table.in[k]);
+			assertEquals((float)Math.sin(Math.PI / 2 * (1 - normal)), 
+					table.out[k]);
+		}
+	}
+	
+	@Test
+	void powerCurvesHoldPowerSteady() {
+		for (CrossFadeMode mode : new CrossFadeMode[] {CrossFadeMode.SINE, 
+				CrossFadeMode.EQUAL_POWER}) {
+			FadeTable table = FadeTable.get(mode, OVERLAP);
+			for (int k = 0; k < OVERLAP; k++) {
+				assertEquals(1, table.in[k] * table.in[k] 
+						+ table.out[k] * table.out[k], 1e-6, mode + " " + k);
+			}
+		}
+	}
+	
+	@Test
+	void amplitudeCurvesSumToOne() {
+		for (CrossFadeMode mode : new CrossFadeMode[] {CrossFadeMode.LINEAR, 
+				CrossFadeMode.RAISED_COSINE}) {
+			FadeTable table = FadeTable.get(mode, OVERLAP);
+			for (int k = 0; k < OVERLAP; k++) {
+				assertEquals(1, table.in[k] + table.out[k], 1e-6, mode + " " + k);
+			}
+			assertEquals(1, table.in[OVERLAP - 1]);
+			assertEquals(0, table.out[OVERLAP - 1]);
+		}
+	}
+	
+	/*
+	 * NONE plays exactly one side at full gain on every frame, 
+	 * switching after the midpoint.
+	 */
+	@Test
+	void noneSwitchesAtTheMidpoint() {
+		for (int overlap : new int[] {1, 2, 7, OVERLAP}) {
+			FadeTable table = FadeTable.get(CrossFadeMode.NONE, overlap);
+			for (int k = 0; k < overlap; k++) {
+				assertEquals(1, table.in[k] + table.out[k], overlap + " " + k);
+				assertEquals((k + 1) * 2 <= overlap ? 0 : 1, table.in[k], 
+						overlap + " " + k);
+			}
+		}
+	}
+	
+	@Test
+	void customCurveIsMirrored() {
+		FadeTable table = FadeTable.build(n -> n * n, 10);
+		for (int k = 0; k < 10; k++) {
+			double normal = (k + 1) / 10.0;
+			assertEquals((float)(normal * normal), table.in[k]);
+			assertEquals((float)((1 - normal) * (1 - normal)), table.out[k]);
+		}
+	}
+	
+	@Test
+	void builtInTablesAreShared() {
+		assertSame(FadeTable.get(CrossFadeMode.LINEAR, 321), 
+				FadeTable.get(CrossFadeMode.LINEAR, 321));
+		assertThrows(IllegalArgumentException.class, 
+				() -> FadeTable.get(CrossFadeMode.CUSTOM, 321));
+	}
+	
+	@Test
+	void overlapsOutOfRangeAreRejected() {
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(new float[44100], Tracks.MONO));
+		dicer.setSliceSize(2000);
+		assertThrows(IllegalArgumentException.class, () -> dicer.setOverlap(-1));
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setOverlap(Integer.MIN_VALUE));
+		assertThrows(IllegalArgumentException.class, () -> dicer.setOverlap(1000));
+		assertTrue(dicer.setOverlap(999));
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class InterpolatorTest {
+
+	private interface Stereo {
+		float read(SampleStore src, float[] l, float[] r, int offset, 
+				int frames, float idx, float speed, float speedIncr);
+	}
+	
+	private interface Mono {
+		float read(SampleStore src, float[] dst, int offset, int frames, 
+				float idx, float speed, float speedIncr);
+	}
+	
+	private static final Stereo[] STEREO = {Interpolator::dropSample, 
+			Interpolator::linear, Interpolator::cubic, Interpolator::sinc};
+	private static final Mono[] MONO = {Interpolator::dropSample, 
+			Interpolator::linear, Interpolator::cubic, Interpolator::sinc};
+	private static final String[] NAMES = {"NONE", "LINEAR", "CUBIC", "SINC"};
+	
+	/*
+	 * Interleaved stereo whose samples are exact in 16 bits, so that a
+	 * SHORT store holds the same values as the float one.
+	 */
+	private static Cue cue(int frames) {
+		float[] pcm = new float[frames * 2];
+		for (int i = 0; i < frames; i++) {
+			pcm[2 * i] = Math.round(20000 * Math.sin(i * 0.07)) / 32768f;
+			pcm[2 * i + 1] = Math.round(15000 * Math.cos(i * 0.31)) / 32768f;
+		}
+		return Cue.fromPCM(pcm, Tracks.STEREO);
+	}
+	
+	@Test
+	void integerPositionsReadTheSamples() {
+		Cue cue = cue(200);
+		for (int m = 0; m < STEREO.length; m++) {
+			float[] l = new float[100], r = new float[100];
+			float end = STEREO[m].read(cue.samples, l, r, 0, 100, 49, 1, 0);
+			assertEquals(149, end);
+			for (int i = 0; i < 100; i++) {
+				assertEquals(cue.samples.get(0, 50 + i), l[i], 1e-6, NAMES[m]);
+				assertEquals(cue.samples.get(1, 50 + i), r[i], 1e-6, NAMES[m]);
+			}
+		}
+	}
+	
+	@Test
+	void linearAndCubicFollowARamp() {
+		float[] ramp = new float[100];
+		for (int i = 0; i < ramp.length; i++) ramp[i] = i / 128f;
+		Cue cue = Cue.fromPCM(ramp, Tracks.MONO);
+		float[] linear = new float[40], cubic = new float[40];
+		Interpolator.linear(cue.samples, linear, 0, 40, 9.75f, 0.5f, 0);
+		Interpolator.cubic(cue.samples, cubic, 0, 40, 9.75f, 0.5f, 0);
+		for (int i = 0; i < 40; i++) {
+			final float expected = (10.25f + 0.5f * i) / 128f;
+			assertEquals(expected, linear[i], 1e-6, "linear " + i);
+			assertEquals(expected, cubic[i], 1e-6, "cubic " + i);
+		}
+	}
+	
+	/*
+	 * The loops over a store and over a float store's arrays must agree
+	 * everywhere, including where sinc taps run off either end of the
+	 * cue, and the mono forms must give the stereo form's left channel.
+	 */
+	@Test
+	void storagesAndChannelFormsAgree() {
+		Cue floats = cue(300);
+		Cue shorts = floats.withStorage(Cue.Storage.SHORT_PLANAR);
+		Cue mono = Cue.fromPCM(floatsOf(floats, 0), Tracks.MONO);
+		Cue monoShorts = mono.withStorage(Cue.Storage.SHORT_INTERLEAVED);
+		
+		for (int m = 0; m < STEREO.length; m++) {
+			for (float speed : new float[] {0.37f, 1, 2.6f}) {
+				final int frames = (int)(290 / speed);
+				float[] l1 = new float[frames], r1 = new float[frames];
+				float[] l2 = new float[frames], r2 = new float[frames];
+				float[] m1 = new float[frames], m2 = new float[frames];
+				STEREO[m].read(floats.samples, l1, r1, 0, frames, 0.2f, speed, 0);
+				STEREO[m].read(shorts.samples, l2, r2, 0, frames, 0.2f, speed, 0);
+				MONO[m].read(mono.samples, m1, 0, frames, 0.2f, speed, 0);
+				MONO[m].read(monoShorts.samples, m2, 0, frames, 0.2f, speed, 0);
+				final String what = NAMES[m] + " at " + speed;
+				assertArrayEquals(l1, l2, what);
+				assertArrayEquals(r1, r2, what);
+				assertArrayEquals(l1, m1, what);
+				assertArrayEquals(l1, m2, what);
+			}
+		}
+	}
+	
+	private static float[] floatsOf(Cue cue, int channel) {
+		float[] data = new float[cue.getFrameCount()];
+		cue.samples.read(channel, 0, data, 0, data.length);
+		return data;
+	}
+	
+	/*
+	 * A tone at 0.4 of the sample rate, read at speed 2, folds down to 
+	 * 0.2. Sinc lowers its cutoff to remove it; linear lets it through.
+	 */
+	@Test
+	void sincSuppressesAliasing() {
+		float[] tone = new float[20000];
+		for (int i = 0; i < tone.length; i++) {
+			tone[i] = (float)(0.5 * Math.sin(2 * Math.PI * 0.4 * i));
+		}
+		Cue cue = Cue.fromPCM(tone, Tracks.MONO);
+		float[] sinc = new float[4000], linear = new float[4000];
+		Interpolator.sinc(cue.samples, sinc, 0, 4000, 5000, 2, 0);
+		Interpolator.linear(cue.samples, linear, 0, 4000, 5000, 2, 0);
+		assertTrue(rms(sinc) < 0.01 * rms(linear), 
+				"sinc " + rms(sinc) + ", linear " + rms(linear));
+	}
+	
+	private static double rms(float[] data) {
+		double sum = 0;
+		for (float v : data) sum += v * v;
+		return Math.sqrt(sum / data.length);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * The vector kernels must give bit-for-bit the scalar results. Each is
+ * run on the same random buffers at every length up to a few vector 
+ * widths, so that both the vector loop and the scalar tail are 
+ * covered, at offsets that are not lane aligned. Skipped when the JVM
+ * has no jdk.incubator.vector.
+ */
+class KernelsTest {
+
+	private static final int MAX_FRAMES = 80;
+	private static final int OFFSET = 3;
+	
+	private final Kernels scalar = new Kernels.Scalar();
+	private Kernels vector;
+	private final SplittableRandom random = new SplittableRandom(17);
+	
+	@BeforeEach
+	void loadVector() throws Exception {
+		assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector")
+				.isPresent(), "no jdk.incubator.vector");
+		Kernels.class.getModule().addReads(ModuleLayer.boot()
+				.findModule("jdk.incubator.vector").get());
+		vector = (Kernels)Class.forName("com.adonax.audiodicer.VectorKernels")
+				.getDeclaredConstructor().newInstance();
+	}
+	
+	private float[] floats(int length, float range) {
+		float[] values = new float[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = (float)((random.nextDouble() * 2 - 1) * range);
+		}
+		return values;
+	}
+	
+	@Test
+	void scale() {
+		for (int frames = 0; frames <= MAX_FRAMES; frames++) {
+			float[] a = floats(frames + 2 * OFFSET, 1);
+			float[] b = a.clone();
+			final float gain = (float)random.nextDouble();
+			scalar.scale(a, OFFSET, frames, gain);
+			vector.scale(b, OFFSET, frames, gain);
+			assertArrayEquals(a, b, frames + " frames");
+		}
+	}
+	
+	@Test
+	void crossfade() {
+		for (int frames = 0; frames <= MAX_FRAMES; frames++) {
+			float[] a = floats(frames + 2 * OFFSET, 1);
+			float[] b = a.clone();
+			float[] in = floats(frames + OFFSET + 1, 1);
+			float[] gainOut = floats(frames + 5, 1);
+			float[] gainIn = floats(frames + 5, 1);
+			scalar.crossfade(a, OFFSET, in, 1, gainOut, gainIn, 5, frames);
+			vector.crossfade(b, OFFSET, in, 1, gainOut, gainIn, 5, frames);
+			assertArrayEquals(a, b, frames + " frames");
+		}
+	}
+	
+	@Test
+	void mix() {
+		for (int frames = 0; frames <= MAX_FRAMES; frames++) {
+			float[] a = floats(frames + 2 * OFFSET, 1);
+			float[] b = a.clone();
+			float[] src = floats(frames + 1, 1);
+			final float gain = (float)random.nextDouble();
+			scalar.mix(a, OFFSET, src, 1, frames, gain);
+			vector.mix(b, OFFSET, src, 1, frames, gain);
+			assertArrayEquals(a, b, frames + " frames");
+		}
+	}
+	
+	@Test
+	void clip16() {
+		for (int frames = 0; frames <= MAX_FRAMES; frames++) {
+			// Out of range values, to exercise the clamp.
+			float[] src = floats(frames + OFFSET, 1.5f);
+			short[] a = new short[frames + 2 * OFFSET];
+			short[] b = new short[frames + 2 * OFFSET];
+			scalar.clip16(src, OFFSET, frames, a, 1);
+			vector.clip16(src, OFFSET, frames, b, 1);
+			assertArrayEquals(a, b, frames + " frames");
+		}
+	}
+	
+	@Test
+	void toFloats() {
+		for (int frames = 0; frames <= MAX_FRAMES; frames++) {
+			short[] src = new short[frames + OFFSET];
+			for (int i = 0; i < src.length; i++) {
+				src[i] = (short)random.nextInt(-32768, 32768);
+			}
+			float[] a = floats(frames + 2 * OFFSET, 1);
+			float[] b = a.clone();
+			scalar.toFloats(src, OFFSET, frames, a, 1, 1 / 32768f);
+			vector.toFloats(src, OFFSET, frames, b, 1, 1 / 32768f);
+			assertArrayEquals(a, b, frames + " frames");
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class LayeredDicerTest {
+
+	private static final int BLOCK = 1000;
+	private static final double[] SPEEDS = {0.5, 1, 2};
+	private static final double[] NEAR = {0.2, 0.5, 0.8};
+	private static final double[] FAR = {0.9, 0.3, 0.05};
+	
+	private static AudioDicer prototype() {
+		float[] pcm = new float[44100 * 2];
+		for (int i = 0; i < pcm.length; i++) {
+			pcm[i] = (float)(0.4 * Math.sin(2 * Math.PI * 180 * i / 44100)
+					+ 0.1 * Math.sin(2 * Math.PI * 2711 * i / 44100));
+		}
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(pcm, Tracks.MONO));
+		dicer.setSliceSize(3000);
+		dicer.setOverlap(500);
+		dicer.setCrossFadeMode(AudioDicer.CrossFadeMode.SINE);
+		dicer.setVolume(0.5);
+		return dicer;
+	}
+	
+	private static LayeredDicer layered(AudioDicer prototype, long seed, 
+			double distance) {
+		LayeredDicer layered = new LayeredDicer(prototype, seed);
+		for (int i = 0; i < SPEEDS.length; i++) {
+			layered.addLayer(SPEEDS[i], NEAR[i], FAR[i]);
+		}
+		layered.setDistance(distance);
+		layered.start();
+		return layered;
+	}
+	
+	/*
+	 * The layers are the prototype copied with seeds drawn in turn from
+	 * the given seed, so separately built dicers summed by hand must 
+	 * give the same audio.
+	 */
+	@Test
+	void matchesLayersSummedByHand() {
+		AudioDicer prototype = prototype();
+		LayeredDicer layered = layered(prototype, 11, 0);
+		
+		SplittableRandom seeds = new SplittableRandom(11);
+		AudioDicer[] dicers = new AudioDicer[SPEEDS.length];
+		for (int i = 0; i < dicers.length; i++) {
+			dicers[i] = new AudioDicer(prototype, seeds.nextLong());
+			dicers[i].setSpeed(SPEEDS[i], 0);
+			dicers[i].start();
+		}
+		
+		float[] left = new float[BLOCK], right = new float[BLOCK];
+		float[] l = new float[BLOCK], r = new float[BLOCK];
+		float[] sumL = new float[BLOCK], sumR = new float[BLOCK];
+		for (int b = 0; b < 20; b++) {
+			assertEquals(BLOCK, layered.render(left, right, 0, BLOCK));
+			Arrays.fill(sumL, 0);
+			Arrays.fill(sumR, 0);
+			for (int i = 0; i < dicers.length; i++) {
+				dicers[i].render(l, r, 0, BLOCK);
+				for (int n = 0; n < BLOCK; n++) {
+					sumL[n] += l[n] * (float)NEAR[i];
+					sumR[n] += r[n] * (float)NEAR[i];
+				}
+			}
+			assertFalse(Arrays.equals(new float[BLOCK], left), "block " + b);
+			assertArrayEquals(sumL, left, 1e-6f, "block " + b);
+			assertArrayEquals(sumR, right, 1e-6f, "block " + b);
+		}
+	}
+	
+	/*
+	 * Once setDistance()'s glide is over, the layers must sit on their
+	 * far gains exactly: a dicer started at that distance renders the 
+	 * same audio from then on. The glide scales with the output rate.
+	 */
+	@Test
+	void distanceRampsReachTheFarGains() {
+		assertReachesFarGains(44100, 1024);
+		assertReachesFarGains(88200, 2048);
+	}
+	
+	private static void assertReachesFarGains(float rate, int rampFrames) {
+		AudioDicer prototype = prototype();
+		prototype.setOutputSampleRate(rate);
+		LayeredDicer moving = layered(prototype, 7, 0);
+		LayeredDicer far = layered(prototype, 7, 1);
+		
+		float[] l1 = new float[BLOCK], r1 = new float[BLOCK];
+		float[] l2 = new float[BLOCK], r2 = new float[BLOCK];
+		moving.render(l1, r1, 0, BLOCK);
+		far.render(l2, r2, 0, BLOCK);
+		
+		moving.setDistance(1);
+		int frame = 0;
+		for (int b = 0; b < 6; b++, frame += BLOCK) {
+			moving.render(l1, r1, 0, BLOCK);
+			far.render(l2, r2, 0, BLOCK);
+			final int last = rampFrames - 1 - frame;
+			if (last >= 0 && last < BLOCK) {
+				assertNotEquals(l2[last], l1[last], "last ramp frame");
+			}
+			if (frame + BLOCK <= rampFrames) {
+				assertFalse(Arrays.equals(l1, l2), "block " + b);
+				continue;
+			}
+			final int from = Math.max(0, rampFrames - frame);
+			assertArrayEquals(Arrays.copyOfRange(l2, from, BLOCK), 
+					Arrays.copyOfRange(l1, from, BLOCK), "block " + b);
+			assertArrayEquals(Arrays.copyOfRange(r2, from, BLOCK), 
+					Arrays.copyOfRange(r1, from, BLOCK), "block " + b);
+		}
+	}
+	
+	@Test
+	void rejectsLayersAfterStart() {
+		LayeredDicer layered = layered(prototype(), 3, 0);
+		assertThrows(IllegalStateException.class, 
+				() -> layered.addLayer(1, 1, 1));
+		assertEquals(SPEEDS.length, layered.getLayerCount());
+	}
+	
+	@Test
+	void rejectsBadDistances() {
+		LayeredDicer layered = new LayeredDicer(prototype(), 3);
+		assertThrows(IllegalArgumentException.class, 
+				() -> layered.setDistance(-0.1));
+		assertThrows(IllegalArgumentException.class, 
+				() -> layered.setDistance(1.1));
+	}
+}
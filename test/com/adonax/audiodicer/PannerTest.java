@@ -0,0 +1,152 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class PannerTest {
+
+	private static final float ROOT2 = (float)Math.sqrt(2);
+	
+	@Test
+	void constantPowerGains() {
+		assertEquals(1, Panner.leftGain(0));
+		assertEquals(1, Panner.rightGain(0));
+		assertEquals(ROOT2, Panner.leftGain(-1), 1e-6);
+		assertEquals(0, Panner.rightGain(-1));
+		assertEquals(0, Panner.leftGain(1));
+		assertEquals(ROOT2, Panner.rightGain(1), 1e-6);
+		
+		for (int i = -100; i <= 100; i++) {
+			final float pan = i / 100f;
+			final float l = Panner.leftGain(pan), r = Panner.rightGain(pan);
+			assertEquals(2, l * l + r * r, 1e-4, "pan " + pan);
+			assertEquals(l, Panner.rightGain(-pan), 1e-6, "pan " + pan);
+		}
+	}
+	
+	@Test
+	void rampEndsAtTheTargetGains() {
+		float[] left = ones(100), right = ones(100);
+		Panner.rampGains(left, right, 0, 100, 0, -0.5f, 40);
+		for (int i = 40; i < 100; i++) {
+			assertEquals(Panner.leftGain(-0.5f), left[i], 1e-6);
+			assertEquals(Panner.rightGain(-0.5f), right[i], 1e-6);
+		}
+		// monotonic on the way there
+		for (int i = 1; i < 40; i++) {
+			assertTrue(left[i] >= left[i - 1]);
+			assertTrue(right[i] <= right[i - 1]);
+		}
+	}
+	
+	/*
+	 * Panned hard right at 44.1kHz, the left channel is delayed by 
+	 * 0.7 millis, 30.87 frames, split between the frames either side.
+	 * The right channel passes unchanged.
+	 */
+	@Test
+	void hardPanDelaysTheFarChannel() {
+		Panner panner = new Panner(44100);
+		float[] left = new float[64], right = new float[64];
+		left[0] = right[0] = 1;
+		panner.delay(left, right, 0, 64, 1, 1, 0);
+		
+		final float delay = (float)(Panner.MAX_DELAY_MS * 44100 / 1000);
+		final int whole = (int)delay;
+		for (int i = 0; i < 64; i++) {
+			assertEquals(i == 0 ? 1 : 0, right[i], "right " + i);
+			final float expected = i == whole ? 1 - (delay - whole) 
+					: i == whole + 1 ? delay - whole : 0;
+			assertEquals(expected, left[i], 1e-5, "left " + i);
+		}
+	}
+	
+	@Test
+	void centredDelayIsTransparent() {
+		Panner panner = new Panner(44100);
+		float[] left = noise(500, 1), right = noise(500, 2);
+		float[] l = left.clone(), r = right.clone();
+		panner.delay(l, r, 0, 500, 0, 0, 0);
+		assertArrayEquals(left, l);
+		assertArrayEquals(right, r);
+	}
+	
+	/*
+	 * Feeding a run must leave the lines as a centred delay() pass 
+	 * would, so that panning away from the centre afterwards reads the
+	 * right history. The run is longer than the lines.
+	 */
+	@Test
+	void feedKeepsTheLinesCurrent() {
+		Panner fed = new Panner(48000);
+		Panner delayed = new Panner(48000);
+		for (int block = 0; block < 3; block++) {
+			float[] left = noise(700, 10 + block), right = noise(700, 20 + block);
+			fed.feed(left.clone(), right.clone(), 0, 700);
+			delayed.delay(left.clone(), right.clone(), 0, 700, 0, 0, 0);
+		}
+		float[] l1 = noise(200, 5), r1 = noise(200, 6);
+		float[] l2 = l1.clone(), r2 = r1.clone();
+		fed.delay(l1, r1, 0, 200, 0, -1, 50);
+		delayed.delay(l2, r2, 0, 200, 0, -1, 50);
+		assertArrayEquals(l2, l1);
+		assertArrayEquals(r2, r1);
+	}
+	
+	private static float[] ones(int frames) {
+		float[] data = new float[frames];
+		Arrays.fill(data, 1);
+		return data;
+	}
+	
+	private static float[] noise(int frames, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		float[] data = new float[frames];
+		for (int i = 0; i < frames; i++) {
+			data[i] = (float)(random.nextDouble() * 2 - 1);
+		}
+		return data;
+	}
+}
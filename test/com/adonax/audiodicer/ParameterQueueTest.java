@@ -0,0 +1,189 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class ParameterQueueTest {
+
+	@Test
+	void capacityMustBeAPowerOfTwo() {
+		assertThrows(IllegalArgumentException.class, () -> new ParameterQueue(12));
+	}
+	
+	@Test
+	void drainsInOfferOrder() {
+		ParameterQueue queue = new ParameterQueue(8);
+		Object payload = new Object();
+		for (int i = 0; i < 5; i++) {
+			assertTrue(queue.offer(i, i * 0.5, 0, i == 3 ? payload : null));
+		}
+		queue.drain(100);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(queue.hasDue());
+			assertEquals(100, queue.nextFrame());
+			assertEquals(i, queue.nextCommand());
+			assertEquals(i * 0.5, queue.nextValue());
+			if (i == 3) assertSame(payload, queue.nextPayload());
+			queue.removeNext();
+		}
+		assertFalse(queue.hasDue());
+	}
+	
+	@Test
+	void dueListIsSortedByFrameAndStable() {
+		ParameterQueue queue = new ParameterQueue(8);
+		queue.offer(0, 0, 64, null);
+		queue.offer(1, 0, 0, null);
+		queue.offer(2, 0, 64, null);
+		queue.offer(3, 0, -5, null); // clamped to the block start
+		queue.offer(4, 0, 32, null);
+		queue.drain(1000);
+		
+		int[] commands = {1, 3, 4, 0, 2};
+		long[] frames = {1000, 1000, 1032, 1064, 1064};
+		for (int i = 0; i < commands.length; i++) {
+			assertEquals(commands[i], queue.nextCommand());
+			assertEquals(frames[i], queue.nextFrame());
+			queue.removeNext();
+		}
+		assertFalse(queue.hasDue());
+	}
+	
+	@Test
+	void rejectsOffersWhenFull() {
+		ParameterQueue queue = new ParameterQueue(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i, 0, 0, null));
+		}
+		assertFalse(queue.offer(4, 0, 0, null));
+		
+		// Draining frees the ring, though the due list still holds them.
+		queue.drain(0);
+		assertTrue(queue.offer(5, 0, 0, null));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, queue.nextCommand());
+			queue.removeNext();
+		}
+		queue.drain(0);
+		assertEquals(5, queue.nextCommand());
+	}
+	
+	@Test
+	void drainStopsWhenTheDueListIsFull() {
+		ParameterQueue queue = new ParameterQueue(4);
+		for (int i = 0; i < 4; i++) queue.offer(i, 0, 0, null);
+		queue.drain(0);
+		for (int i = 4; i < 8; i++) assertTrue(queue.offer(i, 0, 0, null));
+		
+		// Nothing more fits until the due list is worked off.
+		queue.drain(0);
+		assertFalse(queue.offer(8, 0, 0, null));
+		for (int i = 0; i < 4; i++) queue.removeNext();
+		queue.drain(0);
+		for (int i = 4; i < 8; i++) {
+			assertEquals(i, queue.nextCommand());
+			queue.removeNext();
+		}
+	}
+	
+	@Test
+	void releasesPayloads() {
+		ParameterQueue queue = new ParameterQueue(2);
+		queue.offer(0, 0, 0, new Object());
+		queue.drain(0);
+		queue.removeNext();
+		assertFalse(queue.hasDue());
+		// Both the ring slot and the due slot have been cleared.
+		queue.offer(1, 0, 0, null);
+		queue.drain(0);
+		assertNull(queue.nextPayload());
+	}
+	
+	/*
+	 * One producer and one consumer thread, with a small ring so that 
+	 * the producer is likely to find it full and have to retry. How 
+	 * often depends on scheduling, so is not checked here; the overflow
+	 * test covers a full ring. Every command must arrive once, in order. Both sides yield rather than spin, so
+	 * that they make progress on a single core.
+	 */
+	@Test
+	@Timeout(value = 30, unit = TimeUnit.SECONDS, 
+			threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+	void oneProducerOneConsumer() throws Exception {
+		final int count = 1_000_000;
+		final ParameterQueue queue = new ParameterQueue(16);
+		
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				Integer payload = i;
+				while (!queue.offer(i & 0xff, i, 0, payload)) {
+					Thread.yield();
+				}
+			}
+		});
+		producer.setDaemon(true);
+		producer.start();
+		
+		int expected = 0;
+		long frame = 0;
+		while (expected < count) {
+			queue.drain(frame++);
+			if (!queue.hasDue()) Thread.yield();
+			while (queue.hasDue()) {
+				assertEquals(expected & 0xff, queue.nextCommand());
+				assertEquals(expected, queue.nextValue());
+				assertEquals(expected, queue.nextPayload());
+				queue.removeNext();
+				expected++;
+			}
+		}
+		producer.join();
+		queue.drain(frame);
+		assertFalse(queue.hasDue());
+	}
+}
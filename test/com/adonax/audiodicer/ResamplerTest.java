@@ -0,0 +1,144 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class ResamplerTest {
+
+	// Frames at either end where the filter runs off the cue.
+	private static final int EDGE = 200;
+	
+	private static float[] tone(double hz, float rate, int frames) {
+		float[] pcm = new float[frames];
+		for (int i = 0; i < frames; i++) {
+			pcm[i] = (float)(0.5 * Math.sin(2 * Math.PI * hz * i / rate));
+		}
+		return pcm;
+	}
+	
+	/*
+	 * A tone resampled must match the same tone generated at the new
+	 * rate, both for a ratio with exact phases (44100 to 48000 is 
+	 * 160:147) and for one that rounds to the nearest of the phase 
+	 * table's 4096 (44100 to 44101).
+	 */
+	@Test
+	void toneSurvivesConversion() {
+		for (float to : new float[] {48000, 44101, 32000}) {
+			SampleStore in = new SampleStore.Floats(
+					new float[][] {tone(1000, 44100, 44100)});
+			SampleStore out = Resampler.resample(in, 44100, to);
+			assertEquals((int)Math.ceil(44100.0 * to / 44100), out.frames);
+			float[] expected = tone(1000, to, out.frames);
+			for (int i = EDGE; i < out.frames - EDGE; i++) {
+				assertEquals(expected[i], out.get(0, i), 1e-3, to + "Hz, " + i);
+			}
+		}
+	}
+	
+	@Test
+	void unityGainAtDc() {
+		float[] dc = new float[10000];
+		Arrays.fill(dc, 0.5f);
+		SampleStore out = Resampler.resample(
+				new SampleStore.Floats(new float[][] {dc}), 44100, 48000);
+		for (int i = EDGE; i < out.frames - EDGE; i++) {
+			assertEquals(0.5f, out.get(0, i), 1e-4, "frame " + i);
+		}
+	}
+	
+	/*
+	 * Going down, content above the new Nyquist frequency is removed 
+	 * rather than folded back.
+	 */
+	@Test
+	void downsamplingRemovesWhatWouldAlias() {
+		SampleStore in = new SampleStore.Floats(
+				new float[][] {tone(16000, 44100, 44100)});
+		SampleStore out = Resampler.resample(in, 44100, 22050);
+		double sum = 0;
+		for (int i = EDGE; i < out.frames - EDGE; i++) {
+			sum += out.get(0, i) * out.get(0, i);
+		}
+		final double rms = Math.sqrt(sum / (out.frames - 2 * EDGE));
+		assertTrue(rms < 0.5e-3, "rms " + rms);
+	}
+	
+	@Test
+	void cueKeepsItsConversion() {
+		Cue cue = Cue.fromPCM(tone(440, 44100, 8000), Tracks.MONO)
+				.withStorage(Cue.Storage.SHORT_PLANAR);
+		assertSame(cue, cue.atSampleRate(44100));
+		Cue converted = cue.atSampleRate(48000);
+		assertSame(converted, cue.atSampleRate(48000));
+		assertEquals(48000, converted.getSampleRate());
+		assertEquals(Cue.Storage.SHORT_PLANAR, converted.getStorage());
+		
+		Cue offHeap = cue.withStorage(Cue.Storage.SHORT_OFF_HEAP);
+		assertEquals(Cue.Storage.SHORT_INTERLEAVED, 
+				offHeap.atSampleRate(48000).getStorage());
+	}
+	
+	/*
+	 * Millisecond settings, ramps and the default padding follow the 
+	 * output rate, and the cue is played at that rate.
+	 */
+	@Test
+	void dicerTimingFollowsTheOutputRate() {
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(tone(440, 44100, 44100), Tracks.MONO));
+		dicer.setOutputSampleRate(48000);
+		assertEquals(48000, dicer.getCue().getSampleRate());
+		assertEquals(48000, dicer.getCue().getFrameCount());
+		assertEquals(1440, dicer.getCombFilterPadding());
+		
+		dicer.setSliceSizeMillis(100);
+		dicer.setOverlapMillis(10);
+		assertEquals(4800, dicer.getSliceSize());
+		assertEquals(480, dicer.getOverlap());
+		assertEquals(100, dicer.getSliceSizeMillis(), 1e-9);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.CrossFadeMode;
+import com.adonax.audiodicer.AudioDicer.Interpolation;
+import com.adonax.audiodicer.AudioDicer.SliceSelection;
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class SliceBankTest {
+
+	private static float[] pcm(int frames) {
+		float[] pcm = new float[frames];
+		for (int i = 0; i < frames; i++) {
+			pcm[i] = (float)(0.5 * Math.sin(2 * Math.PI * 220 * i / 44100));
+		}
+		return pcm;
+	}
+	
+	private static AudioDicer dicer() {
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(pcm(44100 * 2), Tracks.MONO));
+		dicer.setSliceSize(8000);
+		dicer.setOverlap(1000);
+		dicer.setCrossFadeMode(CrossFadeMode.SINE);
+		return dicer;
+	}
+	
+	/*
+	 * Each slice is the cue from just after its start, with the fade 
+	 * in and fade out already applied.
+	 */
+	@Test
+	void slicesArePreFadedCopiesOfTheCue() {
+		Cue cue = Cue.fromPCM(pcm(44100), Tracks.MONO);
+		FadeTable fades = FadeTable.get(CrossFadeMode.SINE, 100);
+		SliceBank bank = SliceBank.build(cue.samples, 8, 1000, 100, fades, 
+				500, null, new SplittableRandom(7));
+		
+		for (int s = 0; s < bank.count; s++) {
+			final int start = bank.starts[s];
+			assertTrue(start >= 500 && start <= 44100 - 1000 - 2 - 500, 
+					"start " + start);
+			for (int k = 0; k < bank.sliceSize; k++) {
+				float expected = cue.samples.get(0, start + 1 + k);
+				if (k < 100) expected *= fades.in[k];
+				if (k >= 900) expected *= fades.out[k - 900];
+				assertEquals(expected, bank.data[0][s * bank.sliceSize + k], 
+						"slice " + s + ", frame " + k);
+			}
+		}
+	}
+	
+	/*
+	 * The cue repeats every 128 frames, so every splice candidate, the
+	 * first upward zero crossing in each 256-frame block, starts the 
+	 * same audio. A dicer playing from a bank and one playing from the
+	 * cue then play the same starts whichever each draws, and must 
+	 * render the same audio. The overlap is a whole number of periods,
+	 * as a bank's first slice starts past its fade-in.
+	 */
+	private static AudioDicer periodic(Interpolation interpolation, 
+			int bankSize) {
+		float[] pcm = new float[44100 * 2];
+		for (int i = 0; i < pcm.length; i++) {
+			final int k = i % 128;
+			pcm[i] = (float)(0.4 * Math.sin(2 * Math.PI * (k - 0.5) / 128)
+					+ 0.1 * Math.sin(2 * Math.PI * 5 * k / 128));
+		}
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(pcm, Tracks.MONO));
+		dicer.setSliceSize(4096);
+		dicer.setOverlap(512);
+		dicer.setCrossFadeMode(CrossFadeMode.SINE);
+		dicer.setSliceSelection(SliceSelection.SPLICE_INDEX);
+		dicer.setInterpolation(interpolation);
+		dicer.setVolume(0.5);
+		dicer.setSliceBankSize(bankSize);
+		dicer.setSeed(bankSize);
+		return dicer;
+	}
+	
+	@Test
+	void playsAsTheCueDoes() {
+		AudioDicer fromCue = periodic(Interpolation.LINEAR, 0);
+		AudioDicer fromBank = periodic(Interpolation.LINEAR, 6);
+		fromCue.start();
+		fromBank.start();
+		assertEquals(6, fromBank.getSliceBankCount());
+		
+		float[] l1 = new float[1000], r1 = new float[1000];
+		float[] l2 = new float[1000], r2 = new float[1000];
+		for (int b = 0; b < 40; b++) {
+			fromCue.render(l1, r1, 0, 1000);
+			fromBank.render(l2, r2, 0, 1000);
+			assertArrayEquals(l1, l2, 1e-6f, "block " + b);
+			assertArrayEquals(r1, r2, 1e-6f, "block " + b);
+		}
+		assertTrue(fromBank.getMetrics().getSliceSwitches() > 5);
+	}
+	
+	/*
+	 * SINC filters even at speed 1, but the bank holds the cue 
+	 * unfiltered, so a bank voice sounds the same in every mode.
+	 */
+	@Test
+	void ignoresTheInterpolationMode() {
+		AudioDicer linear = periodic(Interpolation.LINEAR, 6);
+		AudioDicer sinc = periodic(Interpolation.SINC, 6);
+		linear.start();
+		sinc.start();
+		
+		float[] l1 = new float[1000], r1 = new float[1000];
+		float[] l2 = new float[1000], r2 = new float[1000];
+		for (int b = 0; b < 20; b++) {
+			linear.render(l1, r1, 0, 1000);
+			sinc.render(l2, r2, 0, 1000);
+			assertArrayEquals(l1, l2, "block " + b);
+			assertArrayEquals(r1, r2, "block " + b);
+		}
+	}
+	
+	@Test
+	void countIsCappedByTheBudget() {
+		AudioDicer dicer = dicer();
+		dicer.setSliceBankSize(100);
+		dicer.setSliceBankBudget(SliceBank.bytesPerSlice(8000, 1) * 5 + 1);
+		dicer.start();
+		assertEquals(5, dicer.getSliceBankCount());
+	}
+	
+	@Test
+	void rejectsBadBudgets() {
+		AudioDicer dicer = dicer();
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setSliceBankBudget(0));
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setSliceBankBudget(-1));
+		
+		// Enough slices to overflow one array per channel.
+		dicer.setSliceBankSize(Integer.MAX_VALUE);
+		dicer.setSliceBankBudget(Long.MAX_VALUE);
+		assertThrows(IllegalStateException.class, dicer::start);
+	}
+	
+	@Test
+	void holdsSpeedAtOne() {
+		AudioDicer dicer = dicer();
+		dicer.setSliceBankSize(4);
+		assertThrows(IllegalStateException.class, () -> dicer.setSpeed(1.5));
+		dicer.setSliceBankSize(0);
+		dicer.setSpeed(1.5);
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setSliceBankSize(4));
+	}
+}
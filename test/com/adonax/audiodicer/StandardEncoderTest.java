@@ -0,0 +1,200 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StandardEncoderTest {
+
+	// Four frames, including full scale and beyond it on each side.
+	private static final float[] LEFT = {0, 0.5f, 1, 1.5f};
+	private static final float[] RIGHT = {-0.5f, -1, -1.5f, 0.25f};
+	
+	@TempDir
+	Path dir;
+	
+	/*
+	 * Integer samples saturate at +/-32767: 0, -16383, 16383, -32767, 
+	 * 32767, -32767, 32767, 8191.
+	 */
+	@Test
+	void pcm16() {
+		assertEncodes(StandardEncoder.PCM16_LE, 
+				0x00, 0x00,  0x01, 0xC0,  0xFF, 0x3F,  0x01, 0x80,
+				0xFF, 0x7F,  0x01, 0x80,  0xFF, 0x7F,  0xFF, 0x1F);
+		assertEncodes(StandardEncoder.PCM16_BE, 
+				0x00, 0x00,  0xC0, 0x01,  0x3F, 0xFF,  0x80, 0x01,
+				0x7F, 0xFF,  0x80, 0x01,  0x7F, 0xFF,  0x1F, 0xFF);
+	}
+	
+	/*
+	 * As 16-bit, at +/-8388607: 0, -4194303, 4194303, -8388607, ...
+	 */
+	@Test
+	void pcm24() {
+		assertEncodes(StandardEncoder.PCM24_LE, 
+				0x00, 0x00, 0x00,  0x01, 0x00, 0xC0,  
+				0xFF, 0xFF, 0x3F,  0x01, 0x00, 0x80,
+				0xFF, 0xFF, 0x7F,  0x01, 0x00, 0x80,  
+				0xFF, 0xFF, 0x7F,  0xFF, 0xFF, 0x1F);
+		assertEncodes(StandardEncoder.PCM24_BE, 
+				0x00, 0x00, 0x00,  0xC0, 0x00, 0x01,  
+				0x3F, 0xFF, 0xFF,  0x80, 0x00, 0x01,
+				0x7F, 0xFF, 0xFF,  0x80, 0x00, 0x01,  
+				0x7F, 0xFF, 0xFF,  0x1F, 0xFF, 0xFF);
+	}
+	
+	/*
+	 * Floats are written as is, beyond full scale too.
+	 */
+	@Test
+	void float32() {
+		assertEncodes(StandardEncoder.FLOAT32_LE, 
+				0x00, 0x00, 0x00, 0x00,  0x00, 0x00, 0x00, 0xBF,
+				0x00, 0x00, 0x00, 0x3F,  0x00, 0x00, 0x80, 0xBF,
+				0x00, 0x00, 0x80, 0x3F,  0x00, 0x00, 0xC0, 0xBF,
+				0x00, 0x00, 0xC0, 0x3F,  0x00, 0x00, 0x80, 0x3E);
+		assertEncodes(StandardEncoder.FLOAT32_BE, 
+				0x00, 0x00, 0x00, 0x00,  0xBF, 0x00, 0x00, 0x00,
+				0x3F, 0x00, 0x00, 0x00,  0xBF, 0x80, 0x00, 0x00,
+				0x3F, 0x80, 0x00, 0x00,  0xBF, 0xC0, 0x00, 0x00,
+				0x3F, 0xC0, 0x00, 0x00,  0x3E, 0x80, 0x00, 0x00);
+	}
+	
+	@Test
+	void describesItsFormat() {
+		for (StandardEncoder encoder : StandardEncoder.values()) {
+			AudioFormat format = encoder.getAudioFormat(48000);
+			assertEquals(encoder.name().startsWith("FLOAT") 
+					? AudioFormat.Encoding.PCM_FLOAT 
+					: AudioFormat.Encoding.PCM_SIGNED, format.getEncoding());
+			assertEquals(2, format.getChannels());
+			assertEquals(48000, format.getSampleRate());
+			assertEquals(encoder.getBytesPerFrame(), format.getFrameSize());
+			assertEquals(encoder.getBytesPerFrame() * 4, 
+					format.getSampleSizeInBits());
+			assertEquals(encoder.name().endsWith("_BE"), format.isBigEndian());
+		}
+	}
+	
+	/*
+	 * Little-endian output written as a WAV file decodes back to the
+	 * input, to within the format's resolution. The signal runs past 
+	 * the 16-bit encoder's scratch chunk.
+	 */
+	@Test
+	void decodesBackToTheInput() throws Exception {
+		final int frames = 1500;
+		float[] left = new float[frames], right = new float[frames];
+		for (int i = 0; i < frames; i++) {
+			left[i] = (float)(0.9 * Math.sin(2 * Math.PI * i / 100));
+			right[i] = (float)(0.7 * Math.cos(2 * Math.PI * i / 37));
+		}
+		assertDecodesBack(StandardEncoder.PCM16_LE, left, right, 2.0 / 32768);
+		assertDecodesBack(StandardEncoder.PCM24_LE, left, right, 2.0 / 8388608);
+		assertDecodesBack(StandardEncoder.FLOAT32_LE, left, right, 0);
+	}
+	
+	private void assertDecodesBack(StandardEncoder encoder, float[] left, 
+			float[] right, double delta) throws Exception {
+		final int frames = left.length;
+		byte[] bytes = new byte[frames * encoder.getBytesPerFrame()];
+		encoder.encode(left, right, 0, frames, bytes, 0);
+		
+		Path file = dir.resolve(encoder + ".wav");
+		AudioSink sink = AudioSink.file(file);
+		sink.open(encoder.getAudioFormat(44100));
+		sink.write(bytes, 0, bytes.length);
+		sink.close();
+		
+		Cue cue = WavDecoder.read(file);
+		assertEquals(frames, cue.getFrameCount());
+		for (int i = 0; i < frames; i++) {
+			assertEquals(left[i], cue.samples.get(0, i), delta, encoder + " " + i);
+			assertEquals(right[i], cue.samples.get(1, i), delta, encoder + " " + i);
+		}
+	}
+	
+	/*
+	 * The same bytes must come out whether encoding into an array at 
+	 * an offset, a heap buffer or a direct buffer, and nothing around
+	 * them may be touched.
+	 */
+	private static void assertEncodes(StandardEncoder encoder, int... golden) {
+		final byte[] expected = new byte[golden.length];
+		for (int i = 0; i < golden.length; i++) expected[i] = (byte)golden[i];
+		final int frames = LEFT.length;
+		final int length = frames * encoder.getBytesPerFrame();
+		assertEquals(length, expected.length);
+		
+		byte[] array = new byte[length + 5];
+		Arrays.fill(array, (byte)0x55);
+		assertEquals(length, encoder.encode(LEFT, RIGHT, 0, frames, array, 3));
+		assertArrayEquals(expected, Arrays.copyOfRange(array, 3, 3 + length), 
+				encoder + " into an array");
+		assertEquals(0x55, array[2]);
+		assertEquals(0x55, array[3 + length]);
+		
+		for (ByteBuffer buffer : new ByteBuffer[] {
+				ByteBuffer.allocate(length + 5), 
+				ByteBuffer.allocateDirect(length + 5)}) {
+			buffer.position(3);
+			assertEquals(length, encoder.encode(LEFT, RIGHT, 0, frames, buffer));
+			assertEquals(3 + length, buffer.position());
+			byte[] written = new byte[length];
+			buffer.position(3);
+			buffer.get(written);
+			assertArrayEquals(expected, written, encoder + " into " + buffer);
+		}
+		
+		// From an offset in the input.
+		byte[] last = new byte[encoder.getBytesPerFrame()];
+		encoder.encode(LEFT, RIGHT, frames - 1, 1, last, 0);
+		assertArrayEquals(Arrays.copyOfRange(expected, length - last.length, 
+				length), last, encoder + " from an offset");
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.adonax.audiodicer.AudioDicer.Tracks;
+
+class VirtualVoiceTest {
+
+	private static final int BLOCK = 512;
+	
+	private static AudioDicer prototype() {
+		float[] pcm = new float[44100 * 2];
+		for (int i = 0; i < pcm.length; i++) {
+			pcm[i] = (float)(0.4 * Math.sin(2 * Math.PI * 180 * i / 44100)
+					+ 0.1 * Math.sin(2 * Math.PI * 2711 * i / 44100));
+		}
+		AudioDicer dicer = new AudioDicer();
+		dicer.setCue(Cue.fromPCM(pcm, Tracks.MONO));
+		dicer.setSliceSize(3000);
+		dicer.setOverlap(500);
+		dicer.setCrossFadeMode(AudioDicer.CrossFadeMode.SINE);
+		dicer.setVolume(0.2);
+		return dicer;
+	}
+	
+	/*
+	 * A voice held virtual, then made audible, must carry on from where
+	 * a voice that played all along has reached: same slices, same 
+	 * positions. Once its resume fade is over, the two match exactly.
+	 */
+	@Test
+	void resumesWherePlayingWouldHaveReached() {
+		AudioDicer prototype = prototype();
+		AudioDicer playing = new AudioDicer(prototype, 5);
+		AudioDicer virtual = new AudioDicer(prototype, 5);
+		virtual.setVirtualThreshold(0.3);
+		playing.start();
+		virtual.start();
+		
+		float[] l1 = new float[BLOCK], r1 = new float[BLOCK];
+		float[] l2 = new float[BLOCK], r2 = new float[BLOCK];
+		float[] silence = new float[BLOCK];
+		for (int b = 0; b < 40; b++) {
+			playing.render(l1, r1, 0, BLOCK);
+			virtual.render(l2, r2, 0, BLOCK);
+			assertArrayEquals(silence, l2);
+			assertArrayEquals(silence, r2);
+			assertTrue(virtual.isVirtual());
+			assertTrue(virtual.wasBlockVirtual());
+		}
+		assertEquals(40 * BLOCK, virtual.getMetrics().getVirtualFrames());
+		assertEquals(0, playing.getMetrics().getVirtualFrames());
+		
+		virtual.setVirtualThreshold(0.1);
+		for (int b = 0; b < 10; b++) {
+			playing.render(l1, r1, 0, BLOCK);
+			virtual.render(l2, r2, 0, BLOCK);
+			assertFalse(virtual.isVirtual());
+			// The first 256 frames fade in.
+			final int from = b == 0 ? 256 : 0;
+			assertArrayEquals(Arrays.copyOfRange(l1, from, BLOCK), 
+					Arrays.copyOfRange(l2, from, BLOCK), "block " + b);
+			assertArrayEquals(Arrays.copyOfRange(r1, from, BLOCK), 
+					Arrays.copyOfRange(r2, from, BLOCK), "block " + b);
+		}
+	}
+	
+	/*
+	 * A voice fading to silence is rendered until the block in which 
+	 * the ramp ends is done, and goes virtual from the next one.
+	 */
+	@Test
+	void goesVirtualAfterAFadeOut() {
+		AudioDicer dicer = new AudioDicer(prototype(), 3);
+		dicer.start();
+		float[] left = new float[BLOCK], right = new float[BLOCK];
+		dicer.render(left, right, 0, BLOCK);
+		assertFalse(dicer.isVirtual());
+		
+		dicer.setVolume(0);
+		dicer.render(left, right, 0, BLOCK);
+		assertFalse(dicer.isVirtual());
+		assertTrue(left[0] != 0, "the ramp is heard");
+		dicer.render(left, right, 0, BLOCK);
+		dicer.render(left, right, 0, BLOCK);
+		assertTrue(dicer.isVirtual());
+		assertTrue(dicer.wasBlockVirtual());
+		assertEquals(BLOCK, dicer.getMetrics().getVirtualFrames());
+		assertArrayEquals(new float[BLOCK], left);
+	}
+	
+	@Test
+	void rejectsBadThresholds() {
+		AudioDicer dicer = new AudioDicer();
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setVirtualThreshold(-0.1));
+		assertThrows(IllegalArgumentException.class, 
+				() -> dicer.setVirtualThreshold(1));
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * This file is part of AudioDicer, 
+ * Copyright 2020 Philip Freihofner.
+ *  
+ * Redistribution and use in source and binary forms, with or 
+ * without modification, are permitted provided that the 
+ * following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above 
+ * copyright notice, this list of conditions and the following 
+ * disclaimer in the documentation and/or other materials 
+ * provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of 
+ * its contributors may be used to endorse or promote products 
+ * derived from this software without specific prior written 
+ * permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR 
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR 
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.adonax.audiodicer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Each bit depth is decoded from a hand-built file whose samples are 
+ * known, and checked against the values they must scale to.
+ */
+class WavDecoderTest {
+
+	private static final int PCM = 1;
+	private static final int FLOAT = 3;
+	private static final int EXTENSIBLE = 0xFFFE;
+	
+	@Test
+	void unsigned8() throws Exception {
+		byte[] data = {0, (byte)128, (byte)255, 64};
+		Cue cue = decode(wav(PCM, 1, 8, data));
+		assertSamples(cue, 0, -1f, 0f, 127 / 128f, -0.5f);
+	}
+	
+	@Test
+	void signed16() throws Exception {
+		ByteBuffer data = le(8);
+		for (int v : new int[] {-32768, 0, 32767, 16384}) data.putShort((short)v);
+		Cue cue = decode(wav(PCM, 1, 16, data.array()));
+		assertSamples(cue, 0, -1f, 0f, 32767 / 32768f, 0.5f);
+	}
+	
+	@Test
+	void signed24() throws Exception {
+		ByteBuffer data = le(12);
+		for (int v : new int[] {-8388608, 0, 8388607, -4194304}) {
+			data.put((byte)v).put((byte)(v >> 8)).put((byte)(v >> 16));
+		}
+		Cue cue = decode(wav(PCM, 1, 24, data.array()));
+		assertSamples(cue, 0, -1f, 0f, 8388607 / 8388608f, -0.5f);
+	}
+	
+	@Test
+	void signed32() throws Exception {
+		ByteBuffer data = le(16);
+		for (int v : new int[] {Integer.MIN_VALUE, 0, 1 << 30, -(1 << 29)}) {
+			data.putInt(v);
+		}
+		Cue cue = decode(wav(PCM, 1, 32, data.array()));
+		assertSamples(cue, 0, -1f, 0f, 0.5f, -0.25f);
+	}
+	
+	@Test
+	void float32() throws Exception {
+		ByteBuffer data = le(16);
+		for (float v : new float[] {-1f, 0f, 0.123456f, 1.5f}) data.putFloat(v);
+		Cue cue = decode(wav(FLOAT, 1, 32, data.array()));
+		assertSamples(cue, 0, -1f, 0f, 0.123456f, 1.5f);
+	}
+	
+	@Test
+	void stereoIsDeinterleaved() throws Exception {
+		ByteBuffer data = le(12);
+		for (int v : new int[] {1000, -1000, 2000, -2000, 3000, -3000}) {
+			data.putShort((short)v);
+		}
+		Cue cue = decode(wav(PCM, 2, 16, data.array()));
+		assertEquals(2, cue.getChannels());
+		assertSamples(cue, 0, 1000 / 32768f, 2000 / 32768f, 3000 / 32768f);
+		assertSamples(cue, 1, -1000 / 32768f, -2000 / 32768f, -3000 / 32768f);
+	}
+	
+	@Test
+	void extensibleUsesItsSubFormat() throws Exception {
+		ByteBuffer data = le(8);
+		for (int v : new int[] {-8388608, 4194304}) {
+			data.put((byte)v).put((byte)(v >> 8)).put((byte)(v >> 16));
+		}
+		data.putShort((short)0); // pad to an even length, unread
+		byte[] bytes = Arrays.copyOf(data.array(), 6);
+		Cue cue = decode(wav(EXTENSIBLE, 1, 24, bytes));
+		assertSamples(cue, 0, -1f, 0.5f);
+	}
+	
+	@Test
+	void skipsOtherChunks() throws Exception {
+		ByteBuffer data = le(4);
+		data.putShort((short)-16384).putShort((short)8192);
+		Cue cue = decode(wav(PCM, 1, 16, data.array(), true));
+		assertSamples(cue, 0, -0.5f, 0.25f);
+		assertEquals(22050f, cue.getSampleRate());
+	}
+	
+	@Test
+	void rejectsUnsupportedFiles() throws IOException {
+		assertThrows(UnsupportedAudioFileException.class, 
+				() -> decode(new byte[] {'R', 'I', 'F', 'F', 0, 0, 0, 0}));
+		assertThrows(UnsupportedAudioFileException.class, 
+				() -> decode(wav(PCM, 3, 16, new byte[12])));
+		assertThrows(UnsupportedAudioFileException.class, 
+				() -> decode(wav(PCM, 1, 12, new byte[4])));
+		assertThrows(UnsupportedAudioFileException.class, 
+				() -> decode(wav(FLOAT, 1, 64, new byte[16])));
+		// No bits per sample, and so no block alignment to divide by.
+		assertThrows(UnsupportedAudioFileException.class, 
+				() -> decode(wav(PCM, 1, 0, new byte[4])));
+		byte[] noData = Arrays.copyOf(wav(PCM, 1, 16, new byte[0]), 36);
+		assertThrows(UnsupportedAudioFileException.class, () -> decode(noData));
+	}
+	
+	/*
+	 * The example asset, against the JDK's own decoder.
+	 */
+	@Test
+	void exampleMatchesAudioSystem() throws Exception {
+		URL url = WavDecoderTest.class.getResource("/example/brook.wav");
+		Cue cue = WavDecoder.read(url);
+		
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(url)) {
+			AudioFormat format = in.getFormat();
+			assertEquals(16, format.getSampleSizeInBits());
+			assertEquals(format.getChannels(), cue.getChannels());
+			assertEquals(format.getSampleRate(), cue.getSampleRate());
+			ByteBuffer pcm = ByteBuffer.wrap(in.readAllBytes())
+					.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN 
+							: ByteOrder.LITTLE_ENDIAN);
+			final int channels = format.getChannels();
+			assertEquals(pcm.capacity() / 2 / channels, cue.getFrameCount());
+			for (int i = 0; i < cue.getFrameCount(); i++) {
+				for (int c = 0; c < channels; c++) {
+					assertEquals(pcm.getShort((i * channels + c) * 2) / 32768f, 
+							cue.samples.get(c, i));
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Decoding straight into a storage, a block at a time, must give 
+	 * what converting the float cue gives.
+	 */
+	@Test
+	void decodesIntoEachStorage() throws Exception {
+		URL url = WavDecoderTest.class.getResource("/example/brook.wav");
+		Cue floats = WavDecoder.read(url);
+		for (Cue.Storage storage : Cue.Storage.values()) {
+			Cue direct = WavDecoder.read(url, storage);
+			Cue converted = floats.withStorage(storage);
+			assertEquals(storage, direct.getStorage());
+			assertEquals(converted.getFrameCount(), direct.getFrameCount());
+			assertEquals(converted.getChannels(), direct.getChannels());
+			for (int c = 0; c < direct.getChannels(); c++) {
+				for (int i = 0; i < direct.getFrameCount(); i++) {
+					assertEquals(converted.samples.get(c, i), 
+							direct.samples.get(c, i), storage + " " + c + ":" + i);
+				}
+			}
+		}
+	}
+	
+	private static void assertSamples(Cue cue, int channel, float... expected) {
+		assertEquals(expected.length, cue.getFrameCount());
+		float[] actual = new float[expected.length];
+		cue.samples.read(channel, 0, actual, 0, actual.length);
+		assertArrayEquals(expected, actual);
+	}
+	
+	private static Cue decode(byte[] file) throws UnsupportedAudioFileException {
+		return WavDecoder.decode(ByteBuffer.wrap(file));
+	}
+	
+	private static ByteBuffer le(int bytes) {
+		return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static byte[] wav(int format, int channels, int bits, byte[] data) 
+			throws IOException {
+		return wav(format, channels, bits, data, false);
+	}
+	
+	/*
+	 * A RIFF/WAVE file around the data, at 22050Hz. The extra chunk has
+	 * an odd length, to check its pad byte is skipped.
+	 */
+	private static byte[] wav(int format, int channels, int bits, byte[] data, 
+			boolean extraChunk) throws IOException {
+		final int blockAlign = channels * ((bits + 7) / 8);
+		final boolean extensible = format == EXTENSIBLE;
+		ByteBuffer fmt = le(extensible ? 40 : 16);
+		fmt.putShort((short)format).putShort((short)channels).putInt(22050)
+				.putInt(22050 * blockAlign).putShort((short)blockAlign)
+				.putShort((short)bits);
+		if (extensible) {
+			fmt.putShort((short)22).putShort((short)bits).putInt(channels == 1 ? 4 : 3)
+					.putShort((short)PCM); // the rest of the GUID is left zero
+		}
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write("WAVE".getBytes("US-ASCII"));
+		if (extraChunk) {
+			chunk(body, "LIST", new byte[] {1, 2, 3});
+		}
+		chunk(body, "fmt ", fmt.array());
+		chunk(body, "data", data);
+		
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.write("RIFF".getBytes("US-ASCII"));
+		file.write(le(4).putInt(body.size()).array());
+		body.writeTo(file);
+		return file.toByteArray();
+	}
+	
+	private static void chunk(ByteArrayOutputStream out, String id, byte[] body) 
+			throws IOException {
+		out.write(id.getBytes("US-ASCII"));
+		out.write(le(4).putInt(body.length).array());
+		out.write(body);
+		if ((body.length & 1) != 0) out.write(0);
+	}
+}